@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import particlefilter.DataPoint;
 import particlefilter.Model;
 import particlefilter.ParticleFilter;
+import particlefilter.SufficientStatisticsModel;
 import statistical_functions.NormalDistribution;
 
 /**
@@ -18,11 +19,13 @@ import statistical_functions.NormalDistribution;
 
 /**
  * Model for normal distribution with known variance (1.0) and unknown
- * mean.
+ * mean. The log-likelihood depends on the data only through the number
+ * of observations, their sum and their sum of squares, so the model also
+ * implements SufficientStatisticsModel.
  * @author Joni
  *
  */
-class OneParamNormalModel extends Model{
+class OneParamNormalModel extends Model implements SufficientStatisticsModel{
 
 	@Override
 	public double logLikelihood(DataPoint[] y, double[] theta) {
@@ -38,6 +41,59 @@ class OneParamNormalModel extends Model{
 		
 		return ll;
 	}
+	
+	/**
+	 * All the particles are scored at once: for each observation the loop
+	 * goes over the means of the particles, which the JIT can vectorise.
+	 * The model has only one parameter, so the means are thetas[from], ..., 
+	 * thetas[to - 1].
+	 */
+	@Override
+	public void logLikelihoods(DataPoint[] y, double[] thetas, int from, int to, double[] out) {
+		
+		double c = -y.length * NormalDistribution.LOG_SQRT_2PI;
+		
+		for(int i = from; i < to; i++) {
+			out[i] = c;
+		}
+		
+		for(int k = 0; k < y.length; k++) {
+			double dp = ((NormalDataPoint) y[k]).y;
+			
+			for(int i = from; i < to; i++) {
+				double d = dp - thetas[i];
+				out[i] -= 0.5 * d * d;
+			}
+		}
+	}
+
+	@Override
+	public int getNStatistics() {
+		return 3;
+	}
+
+	/**
+	 * Statistics are {n, sum(y), sum(y^2)}.
+	 */
+	@Override
+	public void updateStatistics(DataPoint y, double[] statistics) {
+		double dp = ((NormalDataPoint) y).y;
+		
+		statistics[0] += 1;
+		statistics[1] += dp;
+		statistics[2] += dp * dp;
+	}
+
+	@Override
+	public double logLikelihood(double[] statistics, double[] theta) {
+		
+		double n = statistics[0];
+		
+		// sum((y - mu)^2) expanded:
+		double ss = statistics[2] - 2.0 * theta[0] * statistics[1] + n * theta[0] * theta[0];
+		
+		return -0.5 * n * Math.log(2 * Math.PI) - 0.5 * ss;
+	}
 }
 
 class NormalDataPoint extends DataPoint{
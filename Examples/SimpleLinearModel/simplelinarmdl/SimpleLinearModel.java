@@ -4,8 +4,14 @@ import statistical_functions.NormalDistribution;
 import particlefilter.DataPoint;
 import particlefilter.Model;
 import particlefilter.ParticleFilter;
+import particlefilter.SufficientStatisticsModel;
 
-class LinearModel extends Model{
+/**
+ * The linear model also implements SufficientStatisticsModel: the sum of squared
+ * residuals can be calculated from a handful of sums over the data, so proposals
+ * can be scored without going through all the observations.
+ */
+class LinearModel extends Model implements SufficientStatisticsModel{
 	
 	/**
 	 * The log-likelihood is defined in such a way that the array theta
@@ -26,6 +32,40 @@ class LinearModel extends Model{
 		
 		return ll;
 	}
+
+	@Override
+	public int getNStatistics() {
+		return 6;
+	}
+
+	/**
+	 * Statistics are {n, sum(x), sum(y), sum(x^2), sum(xy), sum(y^2)}.
+	 */
+	@Override
+	public void updateStatistics(DataPoint y, double[] statistics) {
+		LinModDataPoint d = (LinModDataPoint) y;
+		
+		statistics[0] += 1;
+		statistics[1] += d.x;
+		statistics[2] += d.y;
+		statistics[3] += d.x * d.x;
+		statistics[4] += d.x * d.y;
+		statistics[5] += d.y * d.y;
+	}
+
+	@Override
+	public double logLikelihood(double[] statistics, double[] theta) {
+		
+		double n = statistics[0];
+		double a = theta[0];
+		double b = theta[1];
+		
+		// sum((y - a - bx)^2) expanded:
+		double ss = statistics[5] - 2 * a * statistics[2] - 2 * b * statistics[4] 
+				+ n * a * a + 2 * a * b * statistics[1] + b * b * statistics[3];
+		
+		return -n * theta[2] - 0.5 * n * Math.log(2 * Math.PI) - 0.5 * ss / Math.exp(2 * theta[2]);
+	}
 }
 
 class LinModDataPoint extends DataPoint{
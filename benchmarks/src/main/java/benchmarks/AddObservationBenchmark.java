@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import particlefilter.DataPoint;
+import particlefilter.ParticleFilter;
+import particlefilter.ResamplingScheme;
+
+/**
+ * Throughput of addObservation, including the rejuvenations triggered by 
+ * the default resampling limit. The cost of a rejuvenation grows with the 
+ * history when the model is scored against it (FULL_HISTORY), so the filter
+ * is recreated every time the history reaches historyLength observations. 
+ * Over an iteration the history then cycles through the same lengths and 
+ * observations, and the throughput does not drift.
+ * 
+ * The check is done in a per-call setup, so that recreating the filter is 
+ * left out of the measurement. JMH then takes timestamps around every call,
+ * which is negligible next to a step of the filter.
+ * 
+ * @author Joni
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddObservationBenchmark {
+	
+	@Param({"1000", "10000", "100000", "1000000"})
+	int NParticles;
+	
+	@Param({"ONE_PARAMETER_NORMAL", "SIMPLE_LINEAR_MODEL"})
+	Workload workload;
+	
+	@Param({"STATISTICS", "FULL_HISTORY"})
+	Workload.Scoring scoring;
+	
+	@Param({"1000"})
+	int historyLength;
+	
+	private DataPoint[] data;
+	private ParticleFilter pf;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void generateData() {
+		data = workload.generateData(historyLength, 1);
+	}
+	
+	@Setup(Level.Invocation)
+	public void createFilter() {
+		if(pf == null || next == historyLength) {
+			pf = new ParticleFilter(NParticles, workload.newModel(scoring), ResamplingScheme.SYSTEMATIC, 2);
+			next = 0;
+		}
+	}
+	
+	@Benchmark
+	public void addObservation() {
+		pf.addObservation(data[next++]);
+	}
+
+}
@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so that the allocation 
+ * rate (gc.alloc.rate.norm, bytes per operation) is reported next to the 
+ * timings. Takes the usual JMH command line options, e.g. a benchmark name 
+ * pattern and -p NParticles=10000.
+ * 
+ * @author Joni
+ *
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		
+		Options opts = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		
+		new Runner(opts).run();
+	}
+
+}
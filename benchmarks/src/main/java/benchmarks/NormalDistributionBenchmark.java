@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import statistical_functions.NormalDistribution;
+
+/**
+ * Normal deviates and log-densities, one at a time and in batches of 1024.
+ * 
+ * @author Joni
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalDistributionBenchmark {
+	
+	private static final int BATCH = 1024;
+	
+	private SplittableRandom rng;
+	private double[] x;
+	private double[] out;
+	private double point;
+	
+	@Setup
+	public void setup() {
+		rng = new SplittableRandom(1);
+		
+		x   = new double[BATCH];
+		out = new double[BATCH];
+		
+		NormalDistribution.genSTDNormalRand(rng, x, 0, BATCH);
+		
+		point = 0.3;
+	}
+	
+	@Benchmark
+	public double genSTDNormalRand() {
+		return NormalDistribution.genSTDNormalRand(rng);
+	}
+	
+	@Benchmark
+	public double[] genSTDNormalRandBatch() {
+		NormalDistribution.genSTDNormalRand(rng, out, 0, BATCH);
+		return out;
+	}
+	
+	@Benchmark
+	public double logPDF() {
+		return NormalDistribution.logPDF(point, 0.5, 1.5);
+	}
+	
+	@Benchmark
+	public double[] logPDFBatch() {
+		NormalDistribution.logPDF(x, 0.5, 1.5, out);
+		return out;
+	}
+
+}
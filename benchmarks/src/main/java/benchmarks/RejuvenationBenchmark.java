@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import particlefilter.DataPoint;
+import particlefilter.ParticleFilter;
+import particlefilter.ResamplingScheme;
+
+/**
+ * Latency of a single rejuvenation (resample + move) as a function of the 
+ * number of particles, the dimensionality of the model (via the workload) 
+ * and the length of the observation history. The filter is first run on 
+ * the history so that the particles are where they would be in practice.
+ * 
+ * Every measured rejuvenation starts from the state right after the 
+ * history: each iteration is a single call on a newly built filter. Running
+ * the history again is much slower than the call, so it is done in the 
+ * iteration setup, where it is not measured.
+ * 
+ * @author Joni
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class RejuvenationBenchmark {
+	
+	@Param({"1000", "10000", "100000", "1000000"})
+	int NParticles;
+	
+	@Param({"ONE_PARAMETER_NORMAL", "SIMPLE_LINEAR_MODEL"})
+	Workload workload;
+	
+	@Param({"100", "1000", "10000"})
+	int historyLength;
+	
+	@Param({"STATISTICS", "FULL_HISTORY"})
+	Workload.Scoring scoring;
+	
+	private DataPoint[] history;
+	private ParticleFilter pf;
+	
+	@Setup(Level.Trial)
+	public void generateData() {
+		history = workload.generateData(historyLength, 1);
+	}
+	
+	@Setup(Level.Iteration)
+	public void createFilter() {
+		pf = new ParticleFilter(NParticles, workload.newModel(scoring), ResamplingScheme.SYSTEMATIC, 2);
+		
+		for(DataPoint y : history) {
+			pf.addObservation(y);
+		}
+	}
+	
+	@Benchmark
+	public void rejuvenate() {
+		pf.rejuvenate();
+	}
+
+}
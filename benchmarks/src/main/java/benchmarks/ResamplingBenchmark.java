@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import particlefilter.ResamplingScheme;
+
+/**
+ * Time to draw the ancestor indices for N particles with each scheme. The 
+ * weights are skewed, roughly like those of a degenerated particle set.
+ * 
+ * @author Joni
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResamplingBenchmark {
+	
+	@Param({"1000", "10000", "100000", "1000000"})
+	int NParticles;
+	
+	@Param({"SYSTEMATIC", "STRATIFIED", "RESIDUAL", "MULTINOMIAL"})
+	ResamplingScheme scheme;
+	
+	private double[] weights;
+	private int[] indices;
+	private SplittableRandom rng;
+	
+	@Setup
+	public void setup() {
+		rng = new SplittableRandom(1);
+		
+		weights = new double[NParticles];
+		indices = new int[NParticles];
+		
+		double sum = 0;
+		
+		for(int i = 0; i < NParticles; i++) {
+			weights[i] = Math.pow(rng.nextDouble(), 8);
+			sum += weights[i];
+		}
+		
+		for(int i = 0; i < NParticles; i++) {
+			weights[i] /= sum;
+		}
+	}
+	
+	@Benchmark
+	public int[] resample() {
+		scheme.resample(weights, indices, rng);
+		return indices;
+	}
+
+}
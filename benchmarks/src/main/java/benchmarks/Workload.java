@@ -0,0 +1,83 @@
+package benchmarks;
+
+import oneparamnorm.OneParameterNormalWorkload;
+import particlefilter.DataPoint;
+import particlefilter.Model;
+import simplelinarmdl.SimpleLinearModelWorkload;
+
+/**
+ * The example models used as benchmark workloads: one parameter (d = 1) 
+ * and a linear model (d = 3).
+ * 
+ * @author Joni
+ *
+ */
+public enum Workload {
+	
+	ONE_PARAMETER_NORMAL {
+		@Override
+		Model newModel() {
+			return OneParameterNormalWorkload.newModel();
+		}
+
+		@Override
+		DataPoint[] generateData(int n, long seed) {
+			return OneParameterNormalWorkload.generateData(n, seed);
+		}
+	},
+	
+	SIMPLE_LINEAR_MODEL {
+		@Override
+		Model newModel() {
+			return SimpleLinearModelWorkload.newModel();
+		}
+
+		@Override
+		DataPoint[] generateData(int n, long seed) {
+			return SimpleLinearModelWorkload.generateData(n, seed);
+		}
+	};
+	
+	abstract Model newModel();
+	
+	abstract DataPoint[] generateData(int n, long seed);
+	
+	/**
+	 * The example models implement SufficientStatisticsModel. With FULL_HISTORY 
+	 * the model is wrapped so that the filter has to score proposals against 
+	 * every stored observation.
+	 */
+	public enum Scoring {
+		STATISTICS, FULL_HISTORY
+	}
+	
+	Model newModel(Scoring scoring) {
+		Model mdl = newModel();
+		
+		return scoring == Scoring.STATISTICS ? mdl : new FullHistoryModel(mdl);
+	}
+	
+	/**
+	 * Delegates to the wrapped model, but hides its sufficient statistics.
+	 */
+	private static class FullHistoryModel extends Model {
+		
+		private final Model delegate;
+		
+		FullHistoryModel(Model delegate_){
+			delegate = delegate_;
+			setPrior(delegate.getPriorMus(), delegate.getPriorSDs());
+		}
+
+		@Override
+		public double logLikelihood(DataPoint[] y, double[] theta) {
+			return delegate.logLikelihood(y, theta);
+		}
+		
+		@Override
+		public void logLikelihoods(DataPoint[] y, double[] thetas, int from, int to, double[] out) {
+			delegate.logLikelihoods(y, thetas, from, to, out);
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package oneparamnorm;
+
+import java.util.SplittableRandom;
+
+import particlefilter.DataPoint;
+import particlefilter.Model;
+
+/**
+ * Gives the benchmarks access to the model of the OneParameterNormal example.
+ * 
+ * @author Joni
+ *
+ */
+public final class OneParameterNormalWorkload {
+	
+	private OneParameterNormalWorkload() {
+		
+	}
+	
+	/**
+	 * @return The model of the example, with the same prior.
+	 */
+	public static Model newModel() {
+		OneParamNormalModel mdl = new OneParamNormalModel();
+		mdl.setPrior(new double[] {0.0}, new double[] {2.0});
+		
+		return mdl;
+	}
+	
+	/**
+	 * @return n observations from N(0.5, 1.0).
+	 */
+	public static DataPoint[] generateData(int n, long seed) {
+		SplittableRandom rng = new SplittableRandom(seed);
+		
+		DataPoint[] data = new DataPoint[n];
+		
+		for(int i = 0; i < n; i++) {
+			data[i] = new NormalDataPoint(rng.nextGaussian() + 0.5);
+		}
+		
+		return data;
+	}
+
+}
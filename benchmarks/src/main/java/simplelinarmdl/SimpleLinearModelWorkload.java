@@ -0,0 +1,50 @@
+package simplelinarmdl;
+
+import java.util.SplittableRandom;
+
+import particlefilter.DataPoint;
+import particlefilter.Model;
+
+/**
+ * Gives the benchmarks access to the model of the SimpleLinearModel example.
+ * 
+ * @author Joni
+ *
+ */
+public final class SimpleLinearModelWorkload {
+	
+	private static final double[] GEN_THETA = new double[] {-0.5,  1.5, Math.log(0.5)};
+	
+	private SimpleLinearModelWorkload() {
+		
+	}
+	
+	/**
+	 * @return The model of the example, with the same prior.
+	 */
+	public static Model newModel() {
+		LinearModel lm = new LinearModel();
+		lm.setPrior(new double[] {0.0, 0.0, 0.0}, new double[] {5.0, 5.0, 1.0});
+		
+		return lm;
+	}
+	
+	/**
+	 * @return n observations generated with the same parameters as in the example.
+	 */
+	public static DataPoint[] generateData(int n, long seed) {
+		SplittableRandom rng = new SplittableRandom(seed);
+		
+		DataPoint[] data = new DataPoint[n];
+		
+		for(int i = 0; i < n; i++) {
+			double x = rng.nextDouble() * 10 - 5; 
+			double y = (GEN_THETA[0] + x * GEN_THETA[1]) + rng.nextGaussian() * Math.exp(GEN_THETA[2]); 
+			
+			data[i] = new LinModDataPoint(x, y);
+		}
+		
+		return data;
+	}
+
+}
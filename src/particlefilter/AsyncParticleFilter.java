@@ -0,0 +1,379 @@
+package particlefilter;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous front end for a ParticleFilter. Observations are submitted 
+ * into a bounded queue and return immediately with a sequence number; a 
+ * dedicated thread takes them off the queue and adds them to the filter. 
+ * Everything that has queued up while the filter was busy (e.g. with a 
+ * rejuvenation) is added as one block with addObservations, so bursts are 
+ * reweighted in one pass while the points of rejuvenation stay the same.
+ * 
+ * The posterior can be read at any time from getSnapshot(), and 
+ * awaitProcessed waits until a given observation has been added. When the 
+ * queue is full, submit blocks, drops the observation or throws depending on 
+ * the BackpressurePolicy. The depth of the queue and the end-to-end latency 
+ * of the observations (from submit until the filter has completed the step 
+ * that added them, after which the posterior including them can be read) 
+ * are recorded.
+ * 
+ * The wrapped filter should not be updated directly while the front end is 
+ * running, and its listeners are called on the filter thread.
+ * 
+ * @author Joni
+ *
+ */
+
+public class AsyncParticleFilter implements AutoCloseable {
+	
+	private final ParticleFilter filter;
+	private final BackpressurePolicy policy;
+	private final ArrayBlockingQueue<Submission> queue;
+	private final Thread worker;
+	
+	// Guards submission so that sequence numbers follow the queue order:
+	private final Object submitLock = new Object();
+	
+	// Number of observations the filter had before the front end was created:
+	private final int observationOffset;
+	
+	private boolean closed;
+	
+	// Updated under submitLock, but read without it, so that the getters do
+	// not wait for a producer blocked on a full queue:
+	
+	private final AtomicLong    NSubmitted    = new AtomicLong();
+	private final AtomicLong    NDropped      = new AtomicLong();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	
+	// Updated by the filter thread, guarded by this:
+	
+	private long    NProcessed;
+	private long    NBatches;
+	private boolean finished;
+	private Throwable failure;
+	
+	private final HistogramListener.Histogram latency = new HistogramListener.Histogram();
+	
+	private static final Submission END = new Submission(null, 0);
+	
+	/**
+	 * Starts the filter thread.
+	 * 
+	 * @param f The filter the observations are added to.
+	 * @param capacity Maximum number of observations waiting in the queue.
+	 * @param p What to do when the queue is full.
+	 * @throws NullPointerException if f or p is null.
+	 * @throws IllegalArgumentException if capacity is not positive.
+	 */
+	public AsyncParticleFilter(ParticleFilter f, int capacity, BackpressurePolicy p) {
+		
+		if(f == null) throw new NullPointerException("Error while instantiating the asynchronous filter: "
+				+ "Filter was null.");
+		
+		if(p == null) throw new NullPointerException("Error while instantiating the asynchronous filter: "
+				+ "Backpressure policy was null.");
+		
+		if(capacity <= 0) throw new IllegalArgumentException("Error while instantiating the asynchronous filter: "
+				+ "Capacity should be a positive integer, got " + capacity);
+		
+		filter = f;
+		policy = p;
+		queue  = new ArrayBlockingQueue<>(capacity);
+		
+		observationOffset = f.getDataPoints().size();
+		
+		worker = new Thread(this::drain, "particle-filter-ingest");
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	/**
+	 * Queues an observation to be added to the filter.
+	 * 
+	 * @param y A type extending the class DataPoint.
+	 * @return Sequence number of the observation, starting from 1, which can
+	 * be given to awaitProcessed; or -1 if the queue was full and the 
+	 * observation was dropped.
+	 * @throws InterruptedException if interrupted while waiting for room in 
+	 * the queue.
+	 * @throws IllegalStateException if the queue is full and the policy is 
+	 * SIGNAL, or if the front end has been closed or the filter has failed.
+	 * @throws NullPointerException if y is null.
+	 */
+	public long submit(DataPoint y) throws InterruptedException {
+		
+		if(y == null) throw new NullPointerException("Error while submitting an observation: "
+				+ "Observation was null.");
+		
+		synchronized(submitLock) {
+			
+			if(closed) throw new IllegalStateException("Error while submitting an observation: "
+					+ "The asynchronous filter has been closed.");
+			
+			checkFailure();
+			
+			Submission s = new Submission(y, System.nanoTime());
+			
+			if(policy == BackpressurePolicy.BLOCK) {
+				queue.put(s);
+			} else if(!queue.offer(s)) {
+				
+				if(policy == BackpressurePolicy.SIGNAL) throw new IllegalStateException("Error while submitting an observation: "
+						+ "Queue is full, " + queue.size() + " observations waiting.");
+				
+				NDropped.incrementAndGet();
+				
+				return -1;
+			}
+			
+			maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+			
+			return NSubmitted.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Waits until the observation with the given sequence number, and all 
+	 * the ones submitted before it, have been added to the filter.
+	 * 
+	 * @param sequenceNumber As returned by submit.
+	 * @return A snapshot of the posterior that includes the observation.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @throws IllegalStateException if the filter thread has failed.
+	 */
+	public synchronized PosteriorSnapshot awaitProcessed(long sequenceNumber) throws InterruptedException {
+		
+		while(true) {
+			checkFailure();
+			
+			if(NProcessed >= sequenceNumber) {
+				
+				// If the filter is already busy with later observations, the 
+				// snapshot may be from before this one; the filter then takes a 
+				// new one at the end of its step.
+				
+				PosteriorSnapshot s = filter.getSnapshot();
+				
+				if(s.getNObservations() >= observationOffset + sequenceNumber) return s;
+				
+			} else if(finished) {
+				throw new IllegalStateException("Error while waiting for an observation: "
+						+ "The asynchronous filter has been closed.");
+			}
+			
+			wait();
+		}
+	}
+	
+	/**
+	 * Stops accepting observations, waits until the queued ones have been 
+	 * added to the filter and stops the filter thread. If interrupted while 
+	 * waiting, returns early with the interrupt status set.
+	 * 
+	 * @throws IllegalStateException if the filter thread has failed.
+	 */
+	@Override
+	public void close() {
+		
+		try {
+			
+			synchronized(submitLock) {
+				if(closed) return;
+				
+				closed = true;
+				
+				// If the filter thread has failed, it has emptied the queue and 
+				// does not need to be told to stop:
+				
+				boolean failed;
+				
+				synchronized(this) {
+					failed = failure != null;
+				}
+				
+				if(!failed) queue.put(END);
+			}
+			
+			worker.join();
+			
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		
+		checkFailure();
+	}
+	
+	/**
+	 * Filter thread: takes whatever is in the queue and adds it as a block.
+	 */
+	private void drain() {
+		
+		ArrayList<Submission> batch = new ArrayList<>();
+		ArrayList<DataPoint>  ys    = new ArrayList<>();
+		
+		try {
+			
+			boolean end = false;
+			
+			while(!end) {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+				
+				for(Submission s : batch) {
+					if(s == END) {
+						end = true;
+					} else {
+						ys.add(s.y);
+					}
+				}
+				
+				if(!ys.isEmpty()) {
+					filter.addObservations(ys);
+				}
+				
+				long added = System.nanoTime();
+				
+				synchronized(this) {
+					for(Submission s : batch) {
+						if(s != END) latency.record(added - s.submitted);
+					}
+					
+					if(!ys.isEmpty()) {
+						NProcessed += ys.size();
+						NBatches++;
+					}
+					
+					notifyAll();
+				}
+				
+				batch.clear();
+				ys.clear();
+			}
+			
+		} catch(Throwable e) {
+			
+			// Whatever stopped the thread, the producers and the waiting 
+			// threads are told about it. Errors are still passed on to the 
+			// thread's uncaught exception handler.
+			
+			synchronized(this) {
+				failure = e;
+			}
+			
+			if(e instanceof InterruptedException) Thread.currentThread().interrupt();
+			if(e instanceof Error) throw (Error) e;
+			
+		} finally {
+			
+			// Unblocks a producer waiting for room; everything submitted 
+			// from now on is refused.
+			
+			boolean failed;
+			
+			synchronized(this) {
+				failed = failure != null;
+			}
+			
+			if(failed) queue.clear();
+			
+			synchronized(this) {
+				finished = true;
+				notifyAll();
+			}
+		}
+	}
+	
+	private void checkFailure() {
+		Throwable e;
+		
+		synchronized(this) {
+			e = failure;
+		}
+		
+		if(e != null) throw new IllegalStateException("Error while running the asynchronous filter: "
+				+ "The filter thread has failed.", e);
+	}
+	
+	/**
+	 * @return The latest snapshot of the posterior, see ParticleFilter.getSnapshot.
+	 */
+	public PosteriorSnapshot getSnapshot() {
+		return filter.getSnapshot();
+	}
+	
+	public ParticleFilter getFilter() {
+		return filter;
+	}
+	
+	public BackpressurePolicy getBackpressurePolicy() {
+		return policy;
+	}
+	
+	/**
+	 * @return Number of observations waiting in the queue right now.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+	
+	/**
+	 * @return Largest number of observations that have been waiting in the 
+	 * queue at once.
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+	
+	public long getNSubmitted() {
+		return NSubmitted.get();
+	}
+	
+	/**
+	 * @return Number of observations dropped because the queue was full, 
+	 * only with the policy DROP.
+	 */
+	public long getNDropped() {
+		return NDropped.get();
+	}
+	
+	/**
+	 * @return Number of observations added to the filter so far.
+	 */
+	public synchronized long getNProcessed() {
+		return NProcessed;
+	}
+	
+	/**
+	 * @return Number of blocks the observations have been added in; the 
+	 * observations that queue up while the filter is busy are added together.
+	 */
+	public synchronized long getNBatches() {
+		return NBatches;
+	}
+	
+	/**
+	 * @return Histogram of the times from submit until the filter had added 
+	 * the observation, in nanoseconds.
+	 */
+	public synchronized HistogramListener.Histogram getLatencyNanos() {
+		return latency.copy();
+	}
+	
+	private static final class Submission {
+		
+		final DataPoint y;
+		final long      submitted;
+		
+		Submission(DataPoint y_, long submitted_){
+			y         = y_;
+			submitted = submitted_;
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package particlefilter;
+
+/**
+ * What AsyncParticleFilter.submit does when the queue of pending 
+ * observations is full.
+ * 
+ * @author Joni
+ *
+ */
+public enum BackpressurePolicy {
+	
+	/**
+	 * The caller waits until there is room in the queue. Nothing is lost, 
+	 * but a slow rejuvenation slows down the producer.
+	 */
+	BLOCK,
+	
+	/**
+	 * The observation is discarded and counted; submit returns -1 right away.
+	 */
+	DROP,
+	
+	/**
+	 * submit throws an IllegalStateException right away, so that the caller 
+	 * can decide what to do with the observation.
+	 */
+	SIGNAL
+
+}
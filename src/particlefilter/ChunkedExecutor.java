@@ -0,0 +1,157 @@
+package particlefilter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the per-particle passes of the filter over contiguous ranges of 
+ * particles. 
+ * 
+ * The particles are divided into blocks of BLOCK_SIZE particles. A block is the 
+ * unit the task sees (and e.g. the unit a random number stream is attached to), 
+ * so the results never depend on how the work is split. For the actual work 
+ * splitting, consecutive blocks are grouped into chunks whose size is chosen 
+ * from a running estimate of the cost per particle: cheap passes get few large 
+ * chunks, expensive ones many small chunks. If the whole pass is estimated to be 
+ * cheaper than the overhead of going parallel, or the parallelism is one, 
+ * it is run sequentially on the calling thread.
+ * 
+ * @author Joni
+ *
+ */
+
+class ChunkedExecutor {
+	
+	static final int BLOCK_SIZE = 256;
+	
+	// A pass estimated to take less than this is run sequentially:
+	private static final double SEQUENTIAL_LIMIT_NS = 100_000;
+	
+	// Preferred duration of a single chunk:
+	private static final double TARGET_CHUNK_NS = 200_000;
+	
+	// The number of chunks is kept at least this many times the parallelism,
+	// when there are enough blocks, so that the load can be balanced:
+	private static final int CHUNKS_PER_THREAD = 4;
+	
+	// Null means the common pool:
+	private ForkJoinPool pool;
+	private boolean sequential = false;
+	
+	// Running estimate of the time in nanoseconds it takes to process one 
+	// unit of work (e.g. one observation) for one particle:
+	private volatile double nanosPerUnit = 50;
+	
+	@FunctionalInterface
+	interface BlockTask {
+		/**
+		 * @param block Index of the block.
+		 * @param from First particle of the block.
+		 * @param to One past the last particle of the block.
+		 */
+		void run(int block, int from, int to);
+	}
+	
+	static int getNBlocks(int n) {
+		return (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+	
+	void setPool(ForkJoinPool p) {
+		pool = p;
+		sequential = false;
+	}
+	
+	void setSequential() {
+		pool = null;
+		sequential = true;
+	}
+	
+	int getParallelism() {
+		if(sequential) return 1;
+		return pool == null ? ForkJoinPool.getCommonPoolParallelism() : pool.getParallelism();
+	}
+	
+	/**
+	 * Runs the task for every block of the particles [0, n).
+	 * 
+	 * @param n Number of particles.
+	 * @param unitsPerParticle Rough amount of work per particle, e.g. the number 
+	 * of observations to be scored. Used only for choosing the chunk size.
+	 * @param task
+	 */
+	void forEachBlock(int n, int unitsPerParticle, BlockTask task) {
+		
+		int NBlocks = getNBlocks(n);
+		int units   = Math.max(1, unitsPerParticle);
+		
+		double estimate = nanosPerUnit * units * n;
+		int parallelism = getParallelism();
+		
+		long start = System.nanoTime();
+		
+		if(parallelism <= 1 || NBlocks == 1 || estimate < SEQUENTIAL_LIMIT_NS) {
+			runBlocks(n, 0, NBlocks, task);
+		} else {
+			double blockNanos = nanosPerUnit * units * BLOCK_SIZE;
+			
+			int blocksPerChunk = (int) Math.max(1, TARGET_CHUNK_NS / blockNanos);
+			int maxBlocksPerChunk = Math.max(1, NBlocks / (CHUNKS_PER_THREAD * parallelism));
+			
+			blocksPerChunk = Math.min(blocksPerChunk, maxBlocksPerChunk);
+			
+			ChunkAction action = new ChunkAction(n, 0, NBlocks, blocksPerChunk, task);
+			
+			if(pool == null) {
+				ForkJoinPool.commonPool().invoke(action);
+			} else {
+				pool.invoke(action);
+			}
+		}
+		
+		// Exponential moving average of the observed cost:
+		double observed = (double) (System.nanoTime() - start) / ((double) units * n);
+		nanosPerUnit = 0.8 * nanosPerUnit + 0.2 * observed;
+	}
+	
+	private static void runBlocks(int n, int fromBlock, int toBlock, BlockTask task) {
+		for(int b = fromBlock; b < toBlock; b++) {
+			int from = b * BLOCK_SIZE;
+			task.run(b, from, Math.min(from + BLOCK_SIZE, n));
+		}
+	}
+	
+	/**
+	 * Splits the range of blocks in halves until it is at most one chunk.
+	 */
+	private static class ChunkAction extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final int n;
+		private final int fromBlock;
+		private final int toBlock;
+		private final int blocksPerChunk;
+		private final BlockTask task;
+		
+		ChunkAction(int n_, int fromBlock_, int toBlock_, int blocksPerChunk_, BlockTask task_){
+			n              = n_;
+			fromBlock      = fromBlock_;
+			toBlock        = toBlock_;
+			blocksPerChunk = blocksPerChunk_;
+			task           = task_;
+		}
+
+		@Override
+		protected void compute() {
+			if(toBlock - fromBlock <= blocksPerChunk) {
+				runBlocks(n, fromBlock, toBlock, task);
+			} else {
+				int mid = (fromBlock + toBlock) >>> 1;
+				
+				invokeAll(new ChunkAction(n, fromBlock, mid, blocksPerChunk, task), 
+						  new ChunkAction(n, mid, toBlock, blocksPerChunk, task));
+			}
+		}
+	}
+
+}
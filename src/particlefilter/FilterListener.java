@@ -0,0 +1,22 @@
+package particlefilter;
+
+/**
+ * Receives the metrics of each step of the filter, i.e. of each call to 
+ * addObservation. Register with ParticleFilter.addListener. 
+ * 
+ * The listener is called on the thread that updates the filter, after the 
+ * step has been completed, so it should return quickly. When no listeners
+ * are registered, the filter does not collect the metrics at all.
+ * 
+ * See HistogramListener and JfrListener for ready-made sinks.
+ * 
+ * @author Joni
+ *
+ */
+
+@FunctionalInterface
+public interface FilterListener {
+	
+	public void onStep(StepMetrics metrics);
+
+}
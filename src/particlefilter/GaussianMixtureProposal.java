@@ -0,0 +1,270 @@
+package particlefilter;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+import statistical_functions.GenericStatsFunctions;
+import statistical_functions.MultivariateNormalDistribution;
+import statistical_functions.NormalDistribution;
+
+/**
+ * Mixture of K multivariate normal distributions, fitted to the weighted 
+ * particles with a few iterations of the EM algorithm. Unlike a single 
+ * normal, this can put proposals on several modes of the posterior.
+ * 
+ * EM is started from K groups of equal weight along the parameter with the 
+ * largest variance, so the fit is deterministic. Components whose weight 
+ * vanishes during the iterations are dropped.
+ * 
+ * @author Joni
+ *
+ */
+public class GaussianMixtureProposal implements ProposalDistribution {
+	
+	private final int K;
+	private final int NIterations;
+	
+	private int        NDim;
+	private double[]   logMixingWeights;
+	private double[]   cumulativeWeights;
+	private double[][] mus;
+	private double[][] Ls;
+	private double[]   logDets;
+	
+	// N x K responsibilities, kept between fits:
+	private double[] responsibilities = new double[0];
+	
+	/**
+	 * Mixture of k components fitted with 10 EM iterations.
+	 */
+	public GaussianMixtureProposal(int k) {
+		this(k, 10);
+	}
+	
+	/**
+	 * @param k Number of components.
+	 * @param iterations Number of EM iterations.
+	 * @throws IllegalArgumentException if k is not positive or iterations is negative.
+	 */
+	public GaussianMixtureProposal(int k, int iterations) {
+		if(k <= 0) throw new IllegalArgumentException("Error while creating the proposal: "
+				+ "Number of components should be a positive integer.");
+		if(iterations < 0) throw new IllegalArgumentException("Error while creating the proposal: "
+				+ "Number of iterations should not be negative.");
+		
+		K = k;
+		NIterations = iterations;
+	}
+	
+	@Override
+	public void fit(double[] thetas, double[] weights, int nparticles, int ndim) {
+		
+		NDim = ndim;
+		
+		logMixingWeights  = new double[K];
+		cumulativeWeights = new double[K];
+		mus     = new double[K][ndim];
+		Ls      = new double[K][];
+		logDets = new double[K];
+		
+		if(responsibilities.length != nparticles * K) {
+			responsibilities = new double[nparticles * K];
+		}
+		
+		initialise(thetas, weights, nparticles);
+		
+		for(int it = 0; it <= NIterations; it++) {
+			maximise(thetas, weights, nparticles);
+			
+			if(it < NIterations) {
+				expect(thetas, nparticles);
+			}
+		}
+		
+		double sum = 0;
+		
+		for(int k = 0; k < K; k++) {
+			sum += Math.exp(logMixingWeights[k]);
+			cumulativeWeights[k] = sum;
+		}
+	}
+	
+	@Override
+	public void sample(RandomGenerator random, double[] out, int from, int to) {
+		
+		for(int i = from; i < to; i++) {
+			
+			double u = random.nextDouble() * cumulativeWeights[K - 1];
+			int k = 0;
+			
+			while(k < K - 1 && cumulativeWeights[k] <= u) k++;
+			
+			NormalDistribution.genSTDNormalRand(random, out, i * NDim, (i + 1) * NDim);
+			MultivariateNormalDistribution.multiplyCholesky(Ls[k], NDim, out, i * NDim);
+			
+			for(int j = 0; j < NDim; j++) {
+				out[i * NDim + j] += mus[k][j];
+			}
+		}
+	}
+	
+	@Override
+	public void logDensity(double[] thetas, int from, int to, double[] out) {
+		
+		double[] scratch = new double[NDim];
+		double[] logs    = new double[K];
+		
+		for(int i = from; i < to; i++) {
+			out[i] = logMixtureDensity(thetas, i, logs, scratch);
+		}
+	}
+	
+	@Override
+	public String getName() {
+		return "GaussianMixtureProposal(" + K + ")";
+	}
+	
+	/**
+	 * Log-density of row i, with the log-densities of the components weighted 
+	 * by the mixing weights left in logs.
+	 */
+	private double logMixtureDensity(double[] thetas, int i, double[] logs, double[] scratch) {
+		
+		double max = Double.NEGATIVE_INFINITY;
+		
+		for(int k = 0; k < K; k++) {
+			logs[k] = Ls[k] == null ? Double.NEGATIVE_INFINITY : logMixingWeights[k] 
+					+ MultivariateNormalDistribution.logPDF(thetas, i * NDim, mus[k], Ls[k], logDets[k], scratch);
+			
+			max = Math.max(max, logs[k]);
+		}
+		
+		double sum = 0;
+		
+		for(int k = 0; k < K; k++) {
+			sum += Math.exp(logs[k] - max);
+		}
+		
+		return max + Math.log(sum);
+	}
+	
+	/**
+	 * Assigns the particles to K groups of equal total weight by their value
+	 * of the parameter with the largest variance.
+	 */
+	private void initialise(double[] thetas, double[] weights, int nparticles) {
+		
+		PosteriorSummary summary = new PosteriorSummary(thetas, weights, nparticles, NDim);
+		double[] sds = summary.getSds();
+		
+		int widest = 0;
+		
+		for(int j = 1; j < NDim; j++) {
+			if(sds[j] > sds[widest]) widest = j;
+		}
+		
+		double[] column = new double[nparticles];
+		int[]    idx    = new int[nparticles];
+		
+		for(int i = 0; i < nparticles; i++) {
+			column[i] = thetas[i * NDim + widest];
+			idx[i]    = i;
+		}
+		
+		GenericStatsFunctions.sortIndices(column, idx, 0, nparticles);
+		
+		double cumulative = 0;
+		
+		for(int r = 0; r < nparticles; r++) {
+			int i = idx[r];
+			int k = Math.min(K - 1, (int) (cumulative * K));
+			
+			cumulative += weights[i];
+			
+			for(int c = 0; c < K; c++) {
+				responsibilities[i * K + c] = c == k ? 1 : 0;
+			}
+		}
+	}
+	
+	/**
+	 * M-step: weighted mixing weights, means and covariances of the components 
+	 * given the responsibilities.
+	 */
+	private void maximise(double[] thetas, double[] weights, int nparticles) {
+		
+		for(int k = 0; k < K; k++) {
+			
+			double   total = 0;
+			double[] mu    = mus[k];
+			
+			Arrays.fill(mu, 0);
+			
+			for(int i = 0; i < nparticles; i++) {
+				double w = weights[i] * responsibilities[i * K + k];
+				
+				total += w;
+				
+				for(int j = 0; j < NDim; j++) {
+					mu[j] += w * thetas[i * NDim + j];
+				}
+			}
+			
+			if(!(total > 1e-12)) {
+				logMixingWeights[k] = Double.NEGATIVE_INFINITY;
+				Ls[k] = null;
+				continue;
+			}
+			
+			for(int j = 0; j < NDim; j++) {
+				mu[j] /= total;
+			}
+			
+			double[][] cov = new double[NDim][NDim];
+			
+			for(int i = 0; i < nparticles; i++) {
+				double w = weights[i] * responsibilities[i * K + k];
+				
+				if(w == 0) continue;
+				
+				for(int j = 0; j < NDim; j++) {
+					double dj = thetas[i * NDim + j] - mu[j];
+					
+					for(int l = 0; l <= j; l++) {
+						cov[j][l] += w * dj * (thetas[i * NDim + l] - mu[l]);
+					}
+				}
+			}
+			
+			for(int j = 0; j < NDim; j++) {
+				for(int l = 0; l <= j; l++) {
+					cov[j][l] /= total;
+					cov[l][j]  = cov[j][l];
+				}
+			}
+			
+			logMixingWeights[k] = Math.log(total);
+			Ls[k]      = GaussianProposal.regularisedCholesky(cov);
+			logDets[k] = MultivariateNormalDistribution.logDeterminant(Ls[k], NDim);
+		}
+	}
+	
+	/**
+	 * E-step: the responsibility of component k for particle i is proportional
+	 * to its weighted density at the particle.
+	 */
+	private void expect(double[] thetas, int nparticles) {
+		
+		double[] scratch = new double[NDim];
+		double[] logs    = new double[K];
+		
+		for(int i = 0; i < nparticles; i++) {
+			double logDensity = logMixtureDensity(thetas, i, logs, scratch);
+			
+			for(int k = 0; k < K; k++) {
+				responsibilities[i * K + k] = Math.exp(logs[k] - logDensity);
+			}
+		}
+	}
+
+}
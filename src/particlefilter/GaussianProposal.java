@@ -0,0 +1,80 @@
+package particlefilter;
+
+import java.util.random.RandomGenerator;
+
+import statistical_functions.MultivariateNormalDistribution;
+
+/**
+ * Multivariate normal proposal with the weighted mean and full covariance 
+ * matrix of the particles. This is the default proposal of the filter.
+ * 
+ * @author Joni
+ *
+ */
+public class GaussianProposal implements ProposalDistribution {
+	
+	private int      NDim;
+	private double[] mu;
+	private double[] L;
+	private double   logDet;
+	
+	@Override
+	public void fit(double[] thetas, double[] weights, int nparticles, int ndim) {
+		
+		PosteriorSummary summary = new PosteriorSummary(thetas, weights, nparticles, ndim);
+		
+		NDim   = ndim;
+		mu     = summary.getMeans();
+		L      = regularisedCholesky(summary.getCovariance());
+		logDet = MultivariateNormalDistribution.logDeterminant(L, ndim);
+	}
+	
+	@Override
+	public void sample(RandomGenerator random, double[] out, int from, int to) {
+		
+		MultivariateNormalDistribution.genRand(L, NDim, random, out, from, to);
+		
+		for(int i = from; i < to; i++) {
+			for(int j = 0; j < NDim; j++) {
+				out[i * NDim + j] += mu[j];
+			}
+		}
+	}
+	
+	@Override
+	public void logDensity(double[] thetas, int from, int to, double[] out) {
+		
+		double[] scratch = new double[NDim];
+		
+		for(int i = from; i < to; i++) {
+			out[i] = MultivariateNormalDistribution.logPDF(thetas, i * NDim, mu, L, logDet, scratch);
+		}
+	}
+	
+	/**
+	 * Cholesky factor of a covariance matrix, with a small multiple of the 
+	 * largest variance added to the diagonal first so that the factorisation 
+	 * succeeds even if the particles have collapsed in some direction.
+	 * 
+	 * @param cov d x d covariance, modified in place.
+	 */
+	static double[] regularisedCholesky(double[][] cov) {
+		
+		int NDim = cov.length;
+		
+		double jitter = 0;
+		
+		for(int j = 0; j < NDim; j++) {
+			jitter = Math.max(jitter, cov[j][j]);
+		}
+		
+		jitter = jitter > 0 ? 1e-10 * jitter : 1e-10;
+		
+		for(int j = 0; j < NDim; j++) {
+			cov[j][j] += jitter;
+		}
+		
+		return MultivariateNormalDistribution.cholesky(cov);
+	}
+
+}
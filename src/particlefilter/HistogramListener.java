@@ -0,0 +1,187 @@
+package particlefilter;
+
+/**
+ * Keeps in-memory histograms of the phase timings and summaries of the 
+ * effective sample size and acceptance rates. Memory use is constant 
+ * regardless of the number of steps. Can be read from other threads.
+ * 
+ * @author Joni
+ *
+ */
+
+public class HistogramListener implements FilterListener {
+	
+	private final Histogram reweight  = new Histogram();
+	private final Histogram commit    = new Histogram();
+	private final Histogram resample  = new Histogram();
+	private final Histogram move      = new Histogram();
+	private final Histogram total     = new Histogram();
+	
+	private long   NSteps;
+	private long   NRejuvenations;
+	private long   likelihoodEvaluations;
+	private double minEffectiveSampleSize = Double.POSITIVE_INFINITY;
+	private double sumAcceptanceRates;
+
+	@Override
+	public synchronized void onStep(StepMetrics m) {
+		
+		reweight.record(m.getReweightNanos());
+		commit.record(m.getCommitNanos());
+		total.record(m.getTotalNanos());
+		
+		if(m.wasRejuvenated()) {
+			resample.record(m.getResampleNanos());
+			move.record(m.getMoveNanos());
+			
+			NRejuvenations++;
+			sumAcceptanceRates += m.getAcceptanceRate();
+		}
+		
+		NSteps++;
+		likelihoodEvaluations += m.getLikelihoodEvaluations();
+		minEffectiveSampleSize = Math.min(minEffectiveSampleSize, m.getEffectiveSampleSize());
+	}
+	
+	public synchronized Histogram getReweightNanos() {
+		return reweight.copy();
+	}
+	
+	/**
+	 * @return Timings of committing the new weights, see StepMetrics.getCommitNanos.
+	 */
+	public synchronized Histogram getCommitNanos() {
+		return commit.copy();
+	}
+	
+	/**
+	 * @return Timings of resampling, only steps in which the set was rejuvenated.
+	 */
+	public synchronized Histogram getResampleNanos() {
+		return resample.copy();
+	}
+	
+	/**
+	 * @return Timings of the move step, only steps in which the set was rejuvenated.
+	 */
+	public synchronized Histogram getMoveNanos() {
+		return move.copy();
+	}
+	
+	public synchronized Histogram getTotalNanos() {
+		return total.copy();
+	}
+	
+	public synchronized long getNSteps() {
+		return NSteps;
+	}
+	
+	public synchronized long getNRejuvenations() {
+		return NRejuvenations;
+	}
+	
+	public synchronized long getLikelihoodEvaluations() {
+		return likelihoodEvaluations;
+	}
+	
+	public synchronized double getMinEffectiveSampleSize() {
+		return minEffectiveSampleSize;
+	}
+	
+	public synchronized double getMeanAcceptanceRate() {
+		return sumAcceptanceRates / NRejuvenations;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("%d steps, %d rejuvenations, min ESS %.1f, mean acceptance %.3f%n"
+				+ "reweight:  %s%ncommit:    %s%nresample:  %s%nmove:      %s%ntotal:     %s", 
+				NSteps, NRejuvenations, minEffectiveSampleSize, getMeanAcceptanceRate(), 
+				reweight, commit, resample, move, total);
+	}
+	
+	/**
+	 * Histogram of durations in nanoseconds with logarithmic buckets: bucket k 
+	 * holds the values in [2^(k-1), 2^k), so quantiles are accurate to within 
+	 * a factor of two. 
+	 */
+	public static class Histogram {
+		
+		private final long[] buckets = new long[64];
+		
+		private long count;
+		private long sum;
+		private long min = Long.MAX_VALUE;
+		private long max = Long.MIN_VALUE;
+		
+		void record(long nanos) {
+			long v = Math.max(0, nanos);
+			
+			buckets[64 - Long.numberOfLeadingZeros(v)]++;
+			
+			count++;
+			sum += v;
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+		
+		Histogram copy() {
+			Histogram h = new Histogram();
+			
+			System.arraycopy(buckets, 0, h.buckets, 0, buckets.length);
+			
+			h.count = count;
+			h.sum   = sum;
+			h.min   = min;
+			h.max   = max;
+			
+			return h;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		public double getMean() {
+			return (double) sum / count;
+		}
+		
+		public long getMin() {
+			return min;
+		}
+		
+		public long getMax() {
+			return max;
+		}
+		
+		/**
+		 * @param p Probability between 0 and 1.
+		 * @return Upper bound of the bucket the p-quantile falls in.
+		 */
+		public long getQuantile(double p) {
+			if(count == 0) return 0;
+			
+			long rank = (long) Math.ceil(p * count);
+			long cumulative = 0;
+			
+			for(int k = 0; k < buckets.length; k++) {
+				cumulative += buckets[k];
+				
+				if(cumulative >= rank) {
+					return Math.min(max, k == 0 ? 0 : (1L << k) - 1);
+				}
+			}
+			
+			return max;
+		}
+		
+		@Override
+		public String toString() {
+			if(count == 0) return "no data";
+			
+			return String.format("n %d, mean %.0f ns, p50 < %d ns, p99 < %d ns, max %d ns", 
+					count, getMean(), getQuantile(0.5), getQuantile(0.99), max);
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package particlefilter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits each step of the filter as a custom Java Flight Recorder event 
+ * (particlefilter.Step), so that the filter shows up on the same timeline 
+ * as GC, allocation and thread events. Costs next to nothing when no 
+ * recording with the event enabled is running.
+ * 
+ * @author Joni
+ *
+ */
+
+public class JfrListener implements FilterListener {
+
+	@Override
+	public void onStep(StepMetrics m) {
+		
+		StepEvent event = new StepEvent();
+		
+		if(!event.isEnabled()) return;
+		
+		event.observationIndex      = m.getObservationIndex();
+		event.reweight              = m.getReweightNanos();
+		event.commitWeights         = m.getCommitNanos();
+		event.resample              = m.getResampleNanos();
+		event.move                  = m.getMoveNanos();
+		event.effectiveSampleSize   = m.getEffectiveSampleSize();
+		event.acceptanceRate        = m.getAcceptanceRate();
+		event.likelihoodEvaluations = m.getLikelihoodEvaluations();
+		event.uniqueAncestors       = m.getNUniqueAncestors();
+		event.moveEvaluations       = m.getMoveEvaluations();
+		event.subsampleSize         = m.getSubsampleSize();
+		
+		event.commit();
+	}
+	
+	@Name("particlefilter.Step")
+	@Label("Particle Filter Step")
+	@Category("Particle Filter")
+	@Description("One observation added to a particle filter")
+	static class StepEvent extends Event {
+		
+		@Label("Observation Index")
+		int observationIndex;
+		
+		@Label("Reweight")
+		@Timespan(Timespan.NANOSECONDS)
+		long reweight;
+		
+		@Label("Commit Weights")
+		@Timespan(Timespan.NANOSECONDS)
+		long commitWeights;
+		
+		@Label("Resample")
+		@Timespan(Timespan.NANOSECONDS)
+		long resample;
+		
+		@Label("Move")
+		@Timespan(Timespan.NANOSECONDS)
+		long move;
+		
+		@Label("Effective Sample Size")
+		double effectiveSampleSize;
+		
+		@Label("Acceptance Rate")
+		double acceptanceRate;
+		
+		@Label("Likelihood Evaluations")
+		long likelihoodEvaluations;
+		
+		@Label("Unique Ancestors")
+		int uniqueAncestors;
+		
+		@Label("Move Evaluations")
+		long moveEvaluations;
+		
+		@Label("Subsample Size")
+		double subsampleSize;
+	}
+
+}
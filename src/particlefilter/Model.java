@@ -17,14 +17,60 @@ public abstract class Model{
 	private double[] priorMus;
 	private double[] priorSDs;
 	
+	/**
+	 * The array y is shared between all the particles (and threads) scoring 
+	 * the same observations, so it must not be modified.
+	 * 
+	 * @param y Observations.
+	 * @param theta Parameter values.
+	 * @return Log-likelihood of the observations.
+	 */
 	public abstract double logLikelihood(DataPoint[] y, double[] theta);
 	
+	/**
+	 * Log-likelihoods of the observations y for a range of particles at once. 
+	 * thetas is the N x d matrix of parameter values of all the particles, stored 
+	 * row-major (particle i occupying thetas[i*d] ... thetas[i*d + d - 1]), and 
+	 * the log-likelihood of particle i is written into out[i].
+	 * 
+	 * The filter always scores particles through this method. The default 
+	 * implementation simply calls logLikelihood(DataPoint[], double[]) for each 
+	 * particle. Overriding it makes it possible to write loops over the particles, 
+	 * e.g. one observation against all the means, that the JIT can vectorise.
+	 * 
+	 * The method is called concurrently for disjoint ranges of particles.
+	 * 
+	 * @param y Observations, shared between threads; must not be modified.
+	 * @param thetas Parameter values of all the particles.
+	 * @param from First particle to be scored.
+	 * @param to One past the last particle to be scored.
+	 * @param out Log-likelihoods are written into out[from], ..., out[to - 1].
+	 */
+	public void logLikelihoods(DataPoint[] y, double[] thetas, int from, int to, double[] out) {
+		
+		int NDim = getNDim();
+		
+		double[] theta = new double[NDim];
+		
+		for(int i = from; i < to; i++) {
+			System.arraycopy(thetas, i * NDim, theta, 0, NDim);
+			out[i] = logLikelihood(y, theta);
+		}
+	}
+	
+	/**
+	 * The filter caches the log-prior of each particle, so this is only 
+	 * called for new particles and proposals.
+	 */
 	public double logPrior(double[] theta) {
 		
+		double[] mus = priorMus;
+		double[] sds = priorSDs;
+		
 		double logprior = 0;
 		
-		for(int i = 0; i < getNDim(); i++) {
-			logprior += NormalDistribution.logPDF(theta[i], priorMus[i], priorSDs[i]);
+		for(int i = 0; i < mus.length; i++) {
+			logprior += NormalDistribution.logPDF(theta[i], mus[i], sds[i]);
 		}
 		
 		return logprior;
@@ -0,0 +1,28 @@
+package particlefilter;
+
+/**
+ * Metropolis-Hastings kernels for the move step that follows resampling. 
+ * Both use the weighted covariance of the particles before resampling, 
+ * so that the proposals follow the correlations of the posterior.
+ * 
+ * @author Joni
+ *
+ */
+public enum MoveKernel {
+	
+	/**
+	 * Proposals are drawn from a normal distribution fitted to the weighted 
+	 * particles, independently of the current particle. Works well when 
+	 * the posterior is close to normal; one sweep is often enough.
+	 */
+	INDEPENDENCE,
+	
+	/**
+	 * Proposals are the current particle plus a normal step with the fitted 
+	 * covariance multiplied by scale^2. The scale is tuned after each sweep 
+	 * toward the target acceptance rate. More robust for posteriors that are
+	 * far from normal, but usually needs several sweeps.
+	 */
+	RANDOM_WALK
+
+}
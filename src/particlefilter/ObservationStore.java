@@ -0,0 +1,80 @@
+package particlefilter;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only storage for the observations added to the filter. 
+ * 
+ * Model.logLikelihood takes an array of exactly the observations to be scored, 
+ * so the store hands out an array snapshot of the history. The snapshot is 
+ * created at most once per added observation and shared by all the particles; 
+ * it must be treated as read-only.
+ * 
+ * @author Joni
+ *
+ */
+
+class ObservationStore {
+	
+	private DataPoint[] observations = new DataPoint[16];
+	private int NObservations = 0;
+	
+	// Snapshot of the first NObservations elements, null if observations
+	// have been appended since it was taken.
+	
+	private DataPoint[] snapshot = new DataPoint[0];
+	
+	void append(DataPoint y) {
+		if(NObservations == observations.length) {
+			observations = Arrays.copyOf(observations, 2 * observations.length);
+		}
+		
+		observations[NObservations++] = y;
+		snapshot = null;
+	}
+	
+	int size() {
+		return NObservations;
+	}
+	
+	DataPoint get(int i) {
+		return observations[i];
+	}
+	
+	/**
+	 * @return Array holding all the observations so far. The same array is 
+	 * returned until the next call to append. Must not be modified.
+	 */
+	DataPoint[] snapshot() {
+		if(snapshot == null) {
+			snapshot = Arrays.copyOf(observations, NObservations);
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * @return Unmodifiable view of the observations. Observations appended 
+	 * later are visible through the view.
+	 */
+	List<DataPoint> asList() {
+		return new AbstractList<DataPoint>() {
+
+			@Override
+			public DataPoint get(int i) {
+				if(i < 0 || i >= NObservations) throw new IndexOutOfBoundsException("Observation index " + i
+						+ " out of bounds for " + NObservations + " observations");
+				
+				return observations[i];
+			}
+
+			@Override
+			public int size() {
+				return NObservations;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,196 @@
+package particlefilter;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+/**
+ * Systematic and stratified resampling split over a thread pool, for large 
+ * particle sets on many cores. ParticleFilter uses this with its own pool 
+ * when parallel resampling is turned on, see setParallelResampling.
+ * 
+ * The cumulative weights are calculated as a parallel prefix sum: each block 
+ * of particles sums its own weights, the block totals are scanned 
+ * sequentially, and the blocks then add their offsets. The resampling points 
+ * (i + U_i) / N are then divided into blocks of the output; each block finds 
+ * the ancestor of its first point by binary search and walks the cumulative 
+ * weights from there, as the sequential schemes do.
+ * 
+ * Systematic resampling uses one uniform random number for all the points; 
+ * stratified resampling draws the numbers of each output block from a stream
+ * of its own, split off the given generator in block order (or seeded from it,
+ * if it cannot be split). Either way the result does not depend on the number
+ * of threads, and the ancestor indices are written in ascending order.
+ * 
+ * @author Joni
+ *
+ */
+
+public final class ParallelResampler implements Resampler {
+	
+	private final ResamplingScheme scheme;
+	private final ChunkedExecutor  executor;
+	
+	private final double[] cumulative;
+	private final double[] blockOffsets;
+	
+	/**
+	 * Resampler that runs in the common pool.
+	 * 
+	 * @param scheme_ SYSTEMATIC or STRATIFIED.
+	 * @param nparticles Number of weights to be resampled.
+	 * @throws IllegalArgumentException for the other schemes.
+	 */
+	public ParallelResampler(ResamplingScheme scheme_, int nparticles){
+		this(scheme_, nparticles, new ChunkedExecutor());
+	}
+	
+	/**
+	 * @param scheme_ SYSTEMATIC or STRATIFIED.
+	 * @param nparticles Number of weights to be resampled.
+	 * @param pool Pool to run in.
+	 * @throws IllegalArgumentException for the other schemes.
+	 * @throws NullPointerException if pool is null.
+	 */
+	public ParallelResampler(ResamplingScheme scheme_, int nparticles, ForkJoinPool pool){
+		this(scheme_, nparticles, poolExecutor(pool));
+	}
+	
+	ParallelResampler(ResamplingScheme scheme_, int nparticles, ChunkedExecutor executor_){
+		
+		if(scheme_ != ResamplingScheme.SYSTEMATIC && scheme_ != ResamplingScheme.STRATIFIED) {
+			throw new IllegalArgumentException("Error while creating a parallel resampler: "
+					+ "Only systematic and stratified resampling can be done in parallel, got " + scheme_);
+		}
+		
+		scheme   = scheme_;
+		executor = executor_;
+		
+		cumulative   = new double[nparticles];
+		blockOffsets = new double[ChunkedExecutor.getNBlocks(nparticles)];
+	}
+	
+	private static ChunkedExecutor poolExecutor(ForkJoinPool pool) {
+		if(pool == null) throw new NullPointerException("Error while creating a parallel resampler: "
+				+ "Pool was null.");
+		
+		ChunkedExecutor executor = new ChunkedExecutor();
+		executor.setPool(pool);
+		
+		return executor;
+	}
+	
+	public ResamplingScheme getScheme() {
+		return scheme;
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the number of weights is not the 
+	 * one the resampler was created for.
+	 */
+	@Override
+	public void resample(double[] weights, int[] indices, RandomGenerator rng) {
+		
+		int N = weights.length;
+		
+		if(N != cumulative.length) {
+			throw new IllegalArgumentException("Error while resampling: "
+					+ "Expected " + cumulative.length + " weights, got " + N);
+		}
+		
+		// Prefix sums within the blocks, then the offsets of the blocks:
+		
+		executor.forEachBlock(N, 1, (b, from, to) -> {
+			double sum = 0;
+			
+			for(int i = from; i < to; i++) {
+				sum += weights[i];
+				cumulative[i] = sum;
+			}
+			
+			blockOffsets[b] = sum;
+		});
+		
+		double total = 0;
+		
+		for(int b = 0; b < blockOffsets.length; b++) {
+			double blockTotal = blockOffsets[b];
+			
+			blockOffsets[b] = total;
+			total += blockTotal;
+		}
+		
+		executor.forEachBlock(N, 1, (b, from, to) -> {
+			double offset = blockOffsets[b];
+			
+			for(int i = from; i < to; i++) {
+				cumulative[i] += offset;
+			}
+		});
+		
+		// The points are compared against the cumulative weights scaled by 
+		// the total, so the weights need not be exactly normalised:
+		
+		double scale = total / N;
+		
+		if(scheme == ResamplingScheme.SYSTEMATIC) {
+			double U = rng.nextDouble();
+			
+			executor.forEachBlock(N, 1, (b, from, to) -> {
+				int j = firstAtLeast((from + U) * scale);
+				
+				for(int i = from; i < to; i++) {
+					double point = (i + U) * scale;
+					
+					while(point > cumulative[j] && j < N - 1) j++;
+					
+					indices[i] = j;
+				}
+			});
+		} else {
+			RandomGenerator[] streams = new RandomGenerator[blockOffsets.length];
+			
+			for(int b = 0; b < streams.length; b++) {
+				streams[b] = rng instanceof SplittableGenerator ? ((SplittableGenerator) rng).split() 
+						: new SplittableRandom(rng.nextLong());
+			}
+			
+			executor.forEachBlock(N, 1, (b, from, to) -> {
+				RandomGenerator random = streams[b];
+				
+				int j = firstAtLeast(from * scale);
+				
+				for(int i = from; i < to; i++) {
+					double point = (i + random.nextDouble()) * scale;
+					
+					while(point > cumulative[j] && j < N - 1) j++;
+					
+					indices[i] = j;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * @return The first index at which the cumulative weight is at least x, 
+	 * or N - 1 if there is none.
+	 */
+	private int firstAtLeast(double x) {
+		
+		int lo = 0, hi = cumulative.length - 1;
+		
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			
+			if(cumulative[mid] < x) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		
+		return lo;
+	}
+
+}
@@ -4,6 +4,9 @@ package particlefilter;
  * Class for storing pairs of parameter values (theta) weights, the 
  * combination of which is known, obviously, as a Particle. 
  * Weights are stored as a default in logarithmic form.
+ * 
+ * The filter itself keeps its particles in a ParticleStore; Particle objects
+ * are only created for the list returned by ParticleFilter.getParticles().
  * @author Joni
  *
  */
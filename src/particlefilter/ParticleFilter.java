@@ -1,36 +1,223 @@
 package particlefilter;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
-import statistical_functions.GenericStatsFunctions;
+import statistical_functions.MultivariateNormalDistribution;
 import statistical_functions.NormalDistribution;
 
-public class ParticleFilter {
+public class ParticleFilter implements AutoCloseable {
 	
 	private int   NParticles;
 	private Model model;	
-	private ArrayList<Particle> particles;
+	private ParticleStore particles;
+	
+	private Resampler resampler;
+	
+	// Preallocated buffers used in resampling. The resampled population is 
+	// described by its unique ancestors and the number of copies of each, 
+	// and the log-target (log-likelihood + log-prior) of each ancestor is 
+	// evaluated once and shared by its copies in the move step:
+	
+	private int[]    resampledIndices;
+	private int[]    ancestors;
+	private int[]    multiplicities;
+	private int      NUnique;
+	private double[] currentTargets;
+	
+	// Used instead of the resampler for systematic and stratified resampling
+	// if parallel resampling has been turned on:
+	
+	private ParallelResampler parallelResampler;
+	
+	// Log-likelihood increments of the latest observation. When a block of 
+	// several observations is scored, the running log-weights and cumulative 
+	// log-likelihoods after each observation are kept in the pending arrays 
+	// (allocated on first use) until the block is committed:
+	
+	private double[] increments;
+	private double[] pendingLogWeights;
+	private double[] pendingLogLikelihoods;
+	
+	// Blocks of observations are scored in segments of at most this many 
+	// observations. The length of the next segment adapts to how far the 
+	// previous one got before the set had to be rejuvenated:
+	
+	private static final int MAX_SEGMENT_LENGTH = 64;
+	
+	private int segmentLength = MAX_SEGMENT_LENGTH;
+	
+	// Particles are processed in contiguous blocks by the executor. Each 
+	// block gets its own random number stream, split from rng in block order, 
+	// so that for a fixed seed the results do not depend on the number of 
+	// threads or on how the blocks are grouped into chunks:
+	
+	private ChunkedExecutor executor = new ChunkedExecutor();
+	
+	// The pool created by setParallelism, if the filter is using one. It is 
+	// shut down when it is replaced or the filter is closed:
+	
+	private ForkJoinPool ownedPool;
+	
+	private SplittableRandom rng;
 
 	private double resamplingLimit = 0.5;
 	
+	// Effective sample size of the current weights, and the log-normaliser 
+	// of the weights calculated by reweight. The sums the two are calculated
+	// from are accumulated per block of particles and per observation of the 
+	// segment (element k * NBlocks + c), with the largest log-weight of the 
+	// block as the shift, and combined in block order:
+	
+	private double NEff;
+	private double pendingLogNormalizer;
+	
+	private double[] blockMax;
+	private double[] blockSums;
+	private double[] blockSumsOfSquares;
+	
+	private double[] prefixNEff;
+	private double[] prefixLogNormalizers;
+	
+	// Incremented whenever the weights or the particles change. The cached 
+	// summary is valid as long as summaryVersion equals version:
+	
+	private long version = 0;
+	
+	private PosteriorSummary summary;
+	private long summaryVersion;
+	
+	// Snapshots of the posterior for readers on other threads, taken on 
+	// demand: at the end of a step if a reader asked for one during it, or by
+	// the reader itself if no step is running. The write lock of stepLock is 
+	// held for the duration of each step by stepThread; readers copy the 
+	// state optimistically and only keep the copy if no step started in the 
+	// meantime. completedVersion is the version after the last completed step.
+	// The parameter values are shared by the snapshots until the particles 
+	// change, i.e. as long as particlesVersion, the version at which they 
+	// last changed, is the one the shared copy was taken at:
+	
+	private final AtomicReference<PosteriorSnapshot> snapshot = new AtomicReference<>();
+	private final AtomicBoolean snapshotRequested = new AtomicBoolean();
+	private final StampedLock stepLock = new StampedLock();
+	
+	private volatile Thread stepThread;
+	private volatile long   completedVersion;
+	
+	private long particlesVersion = 0;
+	private volatile SharedThetas publishedThetas;
+	
+	private static final class SharedThetas {
+		
+		final long     particlesVersion;
+		final double[] thetas;
+		
+		SharedThetas(long particlesVersion_, double[] thetas_){
+			particlesVersion = particlesVersion_;
+			thetas           = thetas_;
+		}
+	}
+	
 	// Data recorded during "run time":
 	
-	private ArrayList<Double>    effectiveSampleSizes  = new ArrayList<Double>();
-	private ArrayList<DataPoint> datapoints            = new ArrayList<DataPoint>();
-	private ArrayList<Integer>   wasResampledAfterObs  = new ArrayList<Integer>();
-	private ArrayList<Double>    acceptanceRatios      = new ArrayList<Double>();
+	private ObservationStore     datapoints            = new ObservationStore();
+	
+	// Proposal distribution of the independence kernel, and the numbers of 
+	// accepted and proposed moves by the name of the proposal:
 	
-	private boolean useuniformProposalDistribution = false;
+	private ProposalDistribution proposal = new GaussianProposal();
+	
+	private LinkedHashMap<String, long[]> acceptanceByProposal = new LinkedHashMap<String, long[]>();
+	
+	// Listeners and the per-step counters reported to them. The metrics are
+	// only collected when there is at least one listener:
+	
+	private volatile FilterListener[] listeners = new FilterListener[0];
+	
+	private long   likelihoodEvaluations;
+	
+	// Results of the latest rejuvenation, and of at most the last 
+	// MAX_RECENT_REJUVENATIONS ones. The full history is only kept by 
+	// listeners, so that nothing grows with the number of observations:
+	
+	private static final int MAX_RECENT_REJUVENATIONS = 1000;
+	
+	private int    NRejuvenations;
+	private double lastAcceptanceRate = Double.NaN;
+	private double lastSubsampleSize  = Double.NaN;
+	
+	private ArrayDeque<Double> recentAcceptanceRatios = new ArrayDeque<Double>();
+	private ArrayDeque<Long>   recentMoveEvaluations  = new ArrayDeque<Long>();
+	private ArrayDeque<Double> recentSubsampleSizes   = new ArrayDeque<Double>();
 
 	// These attributes are used during the resample-move step to save
 	// the pre-resampled estimates to be used in constructing the 
-	// proposal distribution:
+	// random walk proposals, and the log-densities of the current particles 
+	// and their proposals under the independence proposal:
+	
+	private double[] proposalCholesky;
+	private double[] currentLogProposals;
+	private double[] proposalLogProposals;
+	
+	// Delayed acceptance: proposals are first screened against a normal 
+	// approximation of the posterior, fitted in resample, and only the ones 
+	// that pass are scored with the likelihood. The log-densities of the 
+	// current particles and the proposals under the surrogate:
+	
+	private boolean          delayedAcceptance = false;
+	private GaussianProposal surrogate;
+	private double[]         currentSurrogates;
+	private double[]         proposalSurrogates;
+	
+	// Number of proposals scored with the likelihood in the current move step:
+	
+	private long moveEvaluations;
+	
+	// Subsampled moves: the reference point of the control variates, the 
+	// gradients of the log-likelihood terms of the observations at it 
+	// (n x d, row-major) and their sum. Once a proposal has been accepted on 
+	// a subsampled estimate, the cached log-likelihoods are estimates too, 
+	// and are recalculated before they are needed exactly:
+	
+	private boolean  subsampling      = false;
+	private int      initialBatchSize = 100;
+	private double   subsamplingZ     = NormalDistribution.quantile(1 - 0.01 / 2);
+	private double[] referenceTheta;
+	private double[] observationGradients = new double[0];
+	private double[] gradientSum;
+	private boolean  exactLogLikelihoods = true;
+	private long     subsampledTerms;
+	
+	// Settings of the move step. If maxSweeps is positive, the number of 
+	// sweeps is chosen after the first one, see adaptiveSweeps:
 	
-	private double[] mus;
-	private double[] sds;
+	private MoveKernel moveKernel = MoveKernel.INDEPENDENCE;
+	private int        NSweeps    = 1;
+	private int        maxSweeps  = 0;
+	
+	private double targetAcceptanceRate = 0.234;
+	private double proposalScale;
+	
+	// Sufficient statistics of the observations, only used if the model
+	// implements SufficientStatisticsModel:
+	
+	private double[] statistics;
 	
 	
 	/**
+	 * Creates a filter that uses systematic resampling.
 	 * 
 	 * @param nparticles Number of particles used by the filter
 	 * @param m The statistical model (type extending the class Model) used for calculating log-likelihoods and log-priors.
@@ -39,6 +226,41 @@ public class ParticleFilter {
 	 * @throws IllegalStateException if prior has not been set for the model.
 	 */
 	public ParticleFilter(int nparticles, Model m) {
+		this(nparticles, m, ResamplingScheme.SYSTEMATIC);
+	}
+	
+	/**
+	 * 
+	 * @param nparticles Number of particles used by the filter
+	 * @param m The statistical model (type extending the class Model) used for calculating log-likelihoods and log-priors.
+	 * @param r The resampling scheme, e.g. one of ResamplingScheme.
+	 * 
+	 * @throws NullPointerException if model or resampler has not been correctly set
+	 * @throws IllegalStateException if prior has not been set for the model.
+	 */
+	public ParticleFilter(int nparticles, Model m, Resampler r) {
+		this(nparticles, m, r, new SplittableRandom());
+	}
+	
+	/**
+	 * Creates a filter whose random numbers are all drawn from streams split 
+	 * off a generator seeded with the given seed. Two filters created with the 
+	 * same seed and fed the same observations give identical results, 
+	 * regardless of the number of threads used.
+	 * 
+	 * @param nparticles Number of particles used by the filter
+	 * @param m The statistical model (type extending the class Model) used for calculating log-likelihoods and log-priors.
+	 * @param r The resampling scheme, e.g. one of ResamplingScheme.
+	 * @param seed Seed for the random number generator.
+	 * 
+	 * @throws NullPointerException if model or resampler has not been correctly set
+	 * @throws IllegalStateException if prior has not been set for the model.
+	 */
+	public ParticleFilter(int nparticles, Model m, Resampler r, long seed) {
+		this(nparticles, m, r, new SplittableRandom(seed));
+	}
+	
+	private ParticleFilter(int nparticles, Model m, Resampler r, SplittableRandom random) {
 		
 		if(nparticles <= 0) throw new IllegalStateException("Error while instantiating the particle filter: "
 				+ " Number of particles should be a positive integer.");
@@ -49,25 +271,78 @@ public class ParticleFilter {
 		if(m.getPriorMus() == null || m.getPriorSDs() == null) throw new IllegalStateException("Error while instantiating the particle filter: "
 				+ "Prior has not been set for the model");
 		
+		if(r == null) throw new NullPointerException("Error while instantiating the particle filter: "
+				+ "Resampler has not been set correctly, was null.");
+		
 		model  = m;
 		NParticles = nparticles;
+		resampler  = r;
+		rng        = random;
+		
+		resampledIndices  = new int[NParticles];
+		ancestors         = new int[NParticles];
+		multiplicities    = new int[NParticles];
+		currentTargets    = new double[NParticles];
+		
+		currentLogProposals  = new double[NParticles];
+		proposalLogProposals = new double[NParticles];
+		increments        = new double[NParticles];
+		
+		int NBlocks = ChunkedExecutor.getNBlocks(NParticles);
+		
+		blockMax           = new double[NBlocks * MAX_SEGMENT_LENGTH];
+		blockSums          = new double[NBlocks * MAX_SEGMENT_LENGTH];
+		blockSumsOfSquares = new double[NBlocks * MAX_SEGMENT_LENGTH];
+		
+		prefixNEff           = new double[MAX_SEGMENT_LENGTH];
+		prefixLogNormalizers = new double[MAX_SEGMENT_LENGTH];
+		
+		proposalScale = 2.38 / Math.sqrt(model.getNDim());
+		
+		particles = new ParticleStore(NParticles, model.getNDim());
+		
+		double[] priorMus = model.getPriorMus();
+		double[] priorSDs = model.getPriorSDs();
+		double[] thetas   = particles.getThetas();
 		
-		particles = drawParticles(model.getPriorMus(), model.getPriorSDs());
+		SplittableRandom[] streams = splitStreams();
+		
+		double[] logPriors = particles.getLogPriors();
+		
+		forEachChunk(1, (c, from, to) -> {
+			drawParticles(priorMus, priorSDs, thetas, from, to, streams[c]);
+			
+			double[] theta = new double[model.getNDim()];
+			
+			for(int i = from; i < to; i++) {
+				System.arraycopy(thetas, i * theta.length, theta, 0, theta.length);
+				logPriors[i] = model.logPrior(theta);
+			}
+		});
+		
+		particles.setUniformWeights();
+		
+		NEff = NParticles;
+		
+		if(model instanceof SufficientStatisticsModel) {
+			statistics = new double[((SufficientStatisticsModel) model).getNStatistics()];
+		}
+		
+		SharedThetas shared = sharedThetas();
+		
+		publishedThetas = shared;
+		snapshot.set(takeSnapshot(shared));
 	}
 		
 	/**
 	 * This method runs the particle filter on a whole data set.
-	 * In practice, this just calls the addObservation-method
-	 * in a loop, check documentation for it for more information.
+	 * In practice, this just calls the addObservations-method, 
+	 * check documentation for it for more information.
 	 * 
 	 * @param dset A complete data set to run the filter on 
 	 */
 	public void runOnADataSet(ArrayList<DataPoint> dset)  {
-		
-		for(int i = 0; i < dset.size(); i++) {
-			addObservation(dset.get(i));
-		}
-		
+		addObservations(dset);
 	}
 	
 	/**
@@ -79,330 +354,1609 @@ public class ParticleFilter {
 	 * The DataPoints should be defined in such a way that the Model knows how
 	 * to calculate the log-likelihood for them.
 	 * 
+	 * If listeners have been registered (see addListener), they are given the 
+	 * timings and other metrics of the step once it has been completed.
+	 * 
 	 * @param y A type extending the class DataPoint.
+	 * @throws IllegalStateException if the observation has zero likelihood 
+	 * for every particle. The weights are then undefined and the filter cannot
+	 * continue.
 	 */
 	public void addObservation(DataPoint y) {
-		
-		datapoints.add(y);
-		
-		reweight(y);
-		
-		effectiveSampleSizes.add(getNEff());
-		
-	    if(effectiveSampleSizes.get(effectiveSampleSizes.size() - 1) < 10) {
-	    	System.err.println("WARNING: Effective sample size dangerously low: " + getNEff());
-	    	// TODO: What to do?
-	    }
-		
-		if((effectiveSampleSizes.get(effectiveSampleSizes.size() - 1) / (double) NParticles) < resamplingLimit){
-			resample();
-			move();
-		}
-	}
-	
-	/**
-	 * Effective sample size is defined as 1.0 / sum(w^2), in which w is the vector 
-	 * of weights associated with the particles.
-	 * @return Effective sample size, can be fractional. 
-	 */
-	public double getNEff() {
-		double sumOfSquares = 0;
-		
-		sumOfSquares = particles.stream().mapToDouble(t -> t.getWeight() * t.getWeight()).sum();
-		
-		return 1.0 / sumOfSquares;
-	}
-	
-	/**
-	 * Sets the resampling limit as a fraction of the number of particles. 
-	 * In most applications should be between 0.0 and 1.0. Values below 0.0
-	 * imply that the set is never rejuvenated; values above 1.0 imply rejuvenation 
-	 * after each step. 
-	 * @param lim
-	 */
-	public void setResamplingLimit(double lim) {
-		resamplingLimit = lim;
+		addBlock(new DataPoint[] {y}, 0, 1);
 	}
 	
 	/**
-	 * The idea is that one could use different proposal distributions. 
-	 * The default is normal distribution. This is a clunky way of setting
-	 * uniform distribution to be used as the proposal distribution. Min and
-	 * max values are simply the min and max values of the particle set, not
-	 * taking into account their weights. 
+	 * Adds a block of observations at once. The observations are scored in 
+	 * segments of up to 64 observations, each in one pass over the particles,
+	 * which is much cheaper than adding the observations one by one when they
+	 * arrive in bursts.
 	 * 
-	 * As indeed the idea is to have multiple different proposal distributions, 
-	 * this will probably change at some point.
+	 * The effective sample size after each observation of a segment is 
+	 * calculated in the same pass, and the set is rejuvenated right after the
+	 * first observation at which it falls below the resampling limit. The 
+	 * running weights are accumulated in the same order as when adding the 
+	 * observations one at a time, so the set is rejuvenated at exactly the 
+	 * same points and the results are the same. When the limit is crossed 
+	 * inside a segment, the observations up to the crossing are scored a 
+	 * second time and the next segment is made shorter.
 	 * 
-	 * @param b
+	 * Listeners get one StepMetrics for each part of the block that was 
+	 * added in one go.
+	 * 
+	 * @param ys Observations in the order they were made.
+	 * @throws IllegalStateException if some observation has zero likelihood 
+	 * for every particle, see addObservation.
 	 */
-	public void useUniformProposals(boolean b) {
-		useuniformProposalDistribution = b;
-	}
-	
-	
-	// public void writeParticlesToFile(){
-	// TODO
-	//  }
-	//
-	
-
-	
-	public double[] getMarginalMeans() {
-		double[] estimates = new double[model.getNDim()];
+	public void addObservations(List<? extends DataPoint> ys) {
+		if(ys.isEmpty()) return;
 		
-		particles.stream().forEach(t -> {
-			for(int i = 0; i < model.getNDim(); i++) {
-				estimates[i] += t.getTheta()[i] * t.getWeight();
-			}
-		});
+		DataPoint[] block = ys.toArray(new DataPoint[0]);
 		
-		return estimates;
+		addBlock(block, 0, block.length);
 	}
 	
-	public double[] getMarginalSds() {
-		double[] means = getMarginalMeans();
-		double[] sds   = new double[model.getNDim()];
-		
-		particles.stream().forEach(t -> {
-			for(int i = 0; i < model.getNDim(); i++) {
-				sds[i] += ((t.getTheta()[i] - means[i]) * (t.getTheta()[i] - means[i]))* t.getWeight();
+	/**
+	 * Adds the observations ys[from], ..., ys[to - 1] segment by segment. 
+	 * After a segment that was added whole, the next one is twice as long; 
+	 * after one that was cut short by a rejuvenation, the next one is as long
+	 * as the part that was added, so that little scoring is wasted when the 
+	 * set has to be rejuvenated often.
+	 */
+	private void addBlock(DataPoint[] ys, int from, int to) {
+		runStep(() -> {
+			int next = from;
+			
+			while(next < to) {
+				int end = Math.min(to, next + segmentLength);
+				int n   = addSegment(ys, next, end);
+				
+				segmentLength = n < end - next ? n : Math.min(MAX_SEGMENT_LENGTH, 2 * segmentLength);
+				
+				next += n;
 			}
 		});
-		
-		for(int i = 0; i < model.getNDim(); i++) {
-			sds[i] = Math.sqrt(sds[i]);
-		}
-		
-		return sds;
 	}
 	
-	// Methods for getting arbitrary quantiles	
-//		public double[] getQuantiles(double[] quantiles) {
-//			//TODO: Get qquantiles, should call the singular
-//			// getQuantile as many times as there are quantiles to get
-//			return 0;
-//		}
-	//	
-	
 	/**
-	 * This is called when proposals are to be drawn from the uniform
-	 * distribution. See documentation for the method useUniformProposals
-	 * for more information.
-	 * @return
+	 * Runs a step that changes the state of the filter, holding the write 
+	 * lock of stepLock so that readers copying the state optimistically see 
+	 * that it may have changed. A step started from within another one, e.g.
+	 * by a listener, runs in the lock already held.
 	 */
-	private ArrayList<Particle> drawParticlesFromUniform() {
-		
-		ArrayList<Particle> newParticleList = new ArrayList<Particle>();
-        
-		int NDim = model.getNDim();
-		
-		double[] currmin = new double[NDim];
-		double[] currmax = new double[NDim];
-		
-		double[] currtheta = particles.get(0).getTheta();
+	private void runStep(Runnable step) {
 		
-		for(int i = 0; i < NDim; i++) {
-			currmin[i] = currtheta[i];
-			currmax[i] = currtheta[i];
+		if(stepThread == Thread.currentThread()) {
+			step.run();
+			return;
 		}
 		
-		for(int j = 1; j < NParticles; j++) {
-			currtheta = particles.get(j).getTheta();
-			
-			for(int i = 0; i < NDim; i++) {
-				if(currmin[i] > currtheta[i]) currmin[i] = currtheta[i];
-				if(currmax[i] < currtheta[i]) currmax[i] = currtheta[i];
-			}
-		}
+		long stamp = stepLock.writeLock();
+		stepThread = Thread.currentThread();
 		
-		for(int i = 0; i < NParticles; i++) {
-			Particle currParticle = new Particle();
-
-			double[] currentTheta = new double[model.getNDim()];
-			
-			for(int j = 0; j < model.getNDim(); j++) {
-				currentTheta[j] = Math.random() * (currmax[j] - currmin[j]) + currmin[j]; 
-
-			}
-			
-			currParticle.setTheta(currentTheta);
-			currParticle.setLogWeight(Math.log(1.0 / NParticles));
-			
-			newParticleList.add(currParticle);
+		try {
+			step.run();
+		} finally {
+			stepThread = null;
+			stepLock.unlockWrite(stamp);
 		}
-
-		
-		return newParticleList;
 	}
 	
 	/**
-	 * Draws particles from the Normal Distribution. Used e.g. at the first step
-	 * of the Particle Filter, and as a default proposal distribution. 
+	 * Adds the observations ys[from], ..., ys[to - 1], or the ones up to the 
+	 * first at which the effective sample size falls below the resampling 
+	 * limit, and rejuvenates the set if needed.
 	 * 
-	 * @param mu
-	 * @param sd
-	 * @return
+	 * @return The number of observations added.
 	 */
-	private ArrayList<Particle> drawParticles(double[] mu, double[] sd) {
-        
-		ArrayList<Particle> newParticleList = new ArrayList<Particle>();
-        
-		double w = Math.log(1.0/NParticles);
-		
-		for(int i = 0; i < NParticles; i++) {
-			Particle currParticle = new Particle();
-
-			double[] currentTheta = new double[model.getNDim()];
-			
-			for(int j = 0; j < model.getNDim(); j++) {
-				currentTheta[j] = NormalDistribution.genSTDNormalRand() * sd[j] + mu[j]; 
-//				currentTheta[j] = T_distribution.genRand() * sd[j] + mu[j]; 
-			}
-			
-			currParticle.setTheta(currentTheta);
-			currParticle.setLogWeight(w);
-			
-			newParticleList.add(currParticle);
-		}
-		
-		return newParticleList;
-	}
-	
-	private void resample() {
+	private int addSegment(DataPoint[] ys, int from, int to) {
 		
-		// Estimates prior to resampling are saved and used
-		// for the proposal distribution.
-		mus = getMarginalMeans();
-		sds = getMarginalSds();
+		FilterListener[] currentListeners = listeners;
+		boolean measure = currentListeners.length > 0;
 		
-//		System.out.println("Resampling...");
+		long start = measure ? System.nanoTime() : 0;
 		
-		int[] resampledIndices = new int[NParticles];
+		int n = reweight(ys, from, to);
 		
-		double[] weights = new double[NParticles]; 
-
-		for(int i = 0; i < NParticles; i++) {
-			weights[i] = particles.get(i).getWeight();
-		}
+		// The running weights are those after the whole segment, so the 
+		// observations up to the crossing are scored again:
 		
-		for(int i = 0; i < NParticles; i++) {
-			resampledIndices[i] = GenericStatsFunctions.genMultinomRandN(weights);
+		if(n < to - from) {
+			reweight(ys, from, from + n);
 		}
 		
-		ArrayList<Particle> resampledParticles = new ArrayList<Particle>(); 
+		double stepNEff      = prefixNEff[n - 1];
+		pendingLogNormalizer = prefixLogNormalizers[n - 1];
 		
-		for(int i = 0; i < NParticles; i++) {	
-			resampledParticles.add(new Particle(particles.get(resampledIndices[i])));
+		if(pendingLogNormalizer == Double.NEGATIVE_INFINITY) {
+			throw new IllegalStateException("Error while adding an observation: "
+					+ "The observation has zero likelihood for every particle.");
 		}
 		
+		for(int k = from; k < from + n; k++) {
+			datapoints.append(ys[k]);
+			
+			if(statistics != null) {
+				((SufficientStatisticsModel) model).updateStatistics(ys[k], statistics);
+			}
+		}
 		
-		particles = new ArrayList<Particle>();
+		long reweighted = measure ? System.nanoTime() : 0;
 		
-		particles = resampledParticles;
+		commitWeights(n > 1);
 		
-		double w = Math.log(1.0 / NParticles);
+		NEff = stepNEff;
 		
-		particles.stream().forEach(t -> t.setLogWeight(w));
+		long committed = measure ? System.nanoTime() : 0;
 		
-	}
-	
-	private void move() {
+		long resampled = committed;
+		long moved     = committed;
 		
-		int NAccepted = 0;
+		boolean rejuvenated = (stepNEff / (double) NParticles) < resamplingLimit;
 		
-		// Two proposal distributions are supported:
-		// - Gaussian (based on the current marginal mus and sds). This is the default choice.
-		// - Uniform: will generate proposals from the range of the particles.
-	
-		ArrayList<Particle> proposals;
-		if(useuniformProposalDistribution) {
-			proposals = drawParticlesFromUniform();
-		} else {			
-			proposals = drawParticles(mus, sds);		
+		if(rejuvenated){
+			resample();
+			
+			resampled = measure ? System.nanoTime() : 0;
+			
+			move();
+			
+			moved = measure ? System.nanoTime() : 0;
 		}
-
-		// Weights are calculated for the particles and the proposals:
-		// HOX: parallel stream, obviously, does not retain the ordering in these, but that
-		// does not matter here, since all of the proposals are drawn from the same
-		// distribution that is independent from the particles... if ordering was important, 
-		// I reckon the particles should have something like "index" in them, or maybe the 
-		// ratio calculating and so on should be done in the lambda expression...  
-		
-		particles.parallelStream().forEach(t -> {
-			t.setLogWeight(model.logLikelihood(datapoints.toArray(new DataPoint[0]), 
-					t.getTheta()) + model.logPrior(t.getTheta()));
-		});
-		
-		proposals.parallelStream().forEach(t -> {
-			t.setLogWeight(model.logLikelihood(datapoints.toArray(new DataPoint[0]), 
-					t.getTheta()) + model.logPrior(t.getTheta()));
-		});
-	
-		ArrayList<Particle> newSet = new ArrayList<Particle>();
 		
-		for(int i = 0; i < NParticles; i++) {
+		publish();
 		
-			double ratio = proposals.get(i).getLogWeight() - particles.get(i).getLogWeight();
+		if(measure) {
+			StepMetrics metrics = new StepMetrics(datapoints.size(), reweighted - start, committed - reweighted,
+					resampled - committed, moved - resampled, stepNEff, rejuvenated ? lastAcceptanceRate : Double.NaN, 
+					likelihoodEvaluations, rejuvenated ? NUnique : 0, rejuvenated ? moveEvaluations : 0, 
+					rejuvenated ? lastSubsampleSize : Double.NaN);
 			
-			if(Math.log(Math.random()) < ratio || ratio > 0) {
-				
-				newSet.add(new Particle(proposals.get(i)));
-				NAccepted++;
-				
-			} else {
-				
-				newSet.add(new Particle(particles.get(i)));
+			for(FilterListener l : currentListeners) {
+				l.onStep(metrics);
 			}
 		}
 		
-		double w = Math.log(1.0 / NParticles);
-		
-		newSet.stream().forEach(t -> t.setLogWeight(w));
-		
-		particles = new ArrayList<Particle>();
-		
-		particles = newSet;
-		
-		newSet = null;
-		
-		wasResampledAfterObs.add(datapoints.size());
+		likelihoodEvaluations = 0;
 		
-		acceptanceRatios.add((double) NAccepted / (double) NParticles);
+		return n;
 	}
-
 	
-	private void reweight(DataPoint y) {
+	/**
+	 * Registers a listener that gets the metrics of every subsequent step.
+	 * 
+	 * @param l
+	 * @throws NullPointerException if l is null.
+	 */
+	public synchronized void addListener(FilterListener l) {
+		if(l == null) throw new NullPointerException("Error while adding a listener: "
+				+ "Listener was null.");
 		
-		particles.parallelStream().forEach(t -> {
-			t.setLogWeight(t.getLogWeight() + model.logLikelihood(new DataPoint[] {y}, t.getTheta()));
-		});
+		FilterListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+		newListeners[listeners.length] = l;
 		
-		normalizeWeights();
+		listeners = newListeners;
 	}
 	
-	private void normalizeWeights() {
-		double logSumExp = Math.log(particles.stream().mapToDouble(t -> t.getWeight()).sum());
-		
-		particles.stream().forEach(t -> t.setLogWeight(t.getLogWeight() - logSumExp));
+	public synchronized void removeListener(FilterListener l) {
+		listeners = Arrays.stream(listeners).filter(t -> t != l).toArray(FilterListener[]::new);
 	}
 	
-	//
+	/**
+	 * Rejuvenates the particle set (resample followed by a move step) right 
+	 * away, regardless of the effective sample size. addObservation calls this
+	 * automatically when needed, so usually there is no need to call this directly.
+	 */
+	public void rejuvenate() {
+		runStep(() -> {
+			resample();
+			move();
+			
+			publish();
+		});
+	}
 	
-	public double getResamplingLimit() {
-		return resamplingLimit;
+	/**
+	 * Effective sample size is defined as 1.0 / sum(w^2), in which w is the vector 
+	 * of weights associated with the particles. It is calculated from sums 
+	 * accumulated while the particles are reweighted, so this is just a getter.
+	 * @return Effective sample size, can be fractional. 
+	 */
+	public double getNEff() {
+		return NEff;
 	}
 	
-	public ArrayList<Particle> getParticles(){
-		return particles;
+	/**
+	 * Sets the resampling limit as a fraction of the number of particles. 
+	 * In most applications should be between 0.0 and 1.0. Values below 0.0
+	 * imply that the set is never rejuvenated; values above 1.0 imply rejuvenation 
+	 * after each step. 
+	 * @param lim
+	 */
+	public void setResamplingLimit(double lim) {
+		resamplingLimit = lim;
 	}
 	
-	public ArrayList<DataPoint> getDataPoints(){
-		return datapoints;
+	/**
+	 * Sets the number of threads used for the per-particle work. The filter 
+	 * gets its own pool of that many threads, isolated from the common pool. 
+	 * With one thread everything is run sequentially on the calling thread, 
+	 * which is the fastest choice for small numbers of particles.
+	 * 
+	 * Even when parallel, passes that are estimated to be cheaper than the 
+	 * overhead of splitting them are run sequentially. 
+	 * 
+	 * The filter owns the pool: calling this again with the same number of 
+	 * threads keeps it, and it is shut down when it is replaced (by another 
+	 * call to this or to setExecutor) or when the filter is closed.
+	 * 
+	 * @param nthreads
+	 * @throws IllegalArgumentException if nthreads is not positive.
+	 */
+	public void setParallelism(int nthreads) {
+		if(nthreads <= 0) throw new IllegalArgumentException("Error while setting the parallelism: "
+				+ "Number of threads should be a positive integer.");
+		
+		if(nthreads == 1) {
+			executor.setSequential();
+			shutdownOwnedPool();
+		} else if(ownedPool == null || ownedPool.getParallelism() != nthreads) {
+			ForkJoinPool old = ownedPool;
+			
+			ownedPool = new ForkJoinPool(nthreads);
+			executor.setPool(ownedPool);
+			
+			if(old != null) old.shutdown();
+		} else {
+			executor.setPool(ownedPool);
+		}
 	}
 	
-	public ArrayList<Double> getAcceptanceRatios() {
-		return acceptanceRatios;
+	/**
+	 * Makes the filter run its per-particle work in the given pool, e.g. one 
+	 * shared by several filters. By default the common pool is used. The 
+	 * filter does not shut the given pool down; a pool created earlier by 
+	 * setParallelism is shut down.
+	 * 
+	 * @param pool
+	 * @throws NullPointerException if pool is null.
+	 */
+	public void setExecutor(ForkJoinPool pool) {
+		if(pool == null) throw new NullPointerException("Error while setting the executor: "
+				+ "Pool was null.");
+		
+		executor.setPool(pool);
+		shutdownOwnedPool();
+	}
+	
+	/**
+	 * Shuts down the pool created by setParallelism, if any. The filter can 
+	 * still be used afterwards; it then runs in the common pool.
+	 */
+	@Override
+	public void close() {
+		if(ownedPool != null) {
+			executor.setPool(null);
+			shutdownOwnedPool();
+		}
+	}
+	
+	private void shutdownOwnedPool() {
+		if(ownedPool != null) {
+			ownedPool.shutdown();
+			ownedPool = null;
+		}
+	}
+	
+	/**
+	 * Makes systematic and stratified resampling run in parallel: the 
+	 * cumulative weights are calculated as a parallel prefix sum, and each 
+	 * block of the output finds its ancestors independently. This removes the
+	 * sequential pass over the weights between the parallel reweighting and 
+	 * move steps, which matters for millions of particles on many cores. 
+	 * The results are reproducible for a fixed seed regardless of the number
+	 * of threads, but differ from those of sequential resampling. Other 
+	 * schemes are always run sequentially.
+	 * 
+	 * @param b
+	 */
+	public void setParallelResampling(boolean b) {
+		if(b && (resampler == ResamplingScheme.SYSTEMATIC || resampler == ResamplingScheme.STRATIFIED)) {
+			parallelResampler = new ParallelResampler((ResamplingScheme) resampler, NParticles, executor);
+		} else {
+			parallelResampler = null;
+		}
+	}
+	
+	public int getParallelism() {
+		return executor.getParallelism();
+	}
+	
+	/**
+	 * Sets the proposal distribution of the independence move kernel, which 
+	 * is fitted to the particles before each rejuvenation. The default is 
+	 * GaussianProposal; StudentTProposal, GaussianMixtureProposal and 
+	 * UniformProposal are also available. The proposal is not used by the 
+	 * random walk kernel.
+	 * 
+	 * @param p
+	 * @throws NullPointerException if p is null.
+	 */
+	public void setProposalDistribution(ProposalDistribution p) {
+		if(p == null) throw new NullPointerException("Error while setting the proposal distribution: "
+				+ "Proposal was null.");
+		
+		proposal = p;
+	}
+	
+	public ProposalDistribution getProposalDistribution() {
+		return proposal;
+	}
+	
+	/**
+	 * Shorthand for using UniformProposal (if b is true) or GaussianProposal 
+	 * (if b is false) as the proposal distribution. Min and max values are 
+	 * simply the min and max values of the particle set, not taking into 
+	 * account their weights. 
+	 * 
+	 * @param b
+	 */
+	public void useUniformProposals(boolean b) {
+		setProposalDistribution(b ? new UniformProposal() : new GaussianProposal());
+	}
+	
+	/**
+	 * Acceptance rates of the move step, over all rejuvenations so far, by 
+	 * the proposal that was used: the name of the proposal distribution for 
+	 * the independence kernel, "RandomWalk" for the random walk kernel. 
+	 * Comparing these helps choosing the cheapest proposal that mixes.
+	 * 
+	 * @return Map from the name of the proposal to its acceptance rate.
+	 */
+	public Map<String, Double> getAcceptanceRatesByProposal() {
+		LinkedHashMap<String, Double> rates = new LinkedHashMap<String, Double>();
+		
+		for(Map.Entry<String, long[]> e : acceptanceByProposal.entrySet()) {
+			rates.put(e.getKey(), (double) e.getValue()[0] / (double) e.getValue()[1]);
+		}
+		
+		return rates;
+	}
+	
+	/**
+	 * Sets the Metropolis-Hastings kernel used to move the particles after 
+	 * resampling, see MoveKernel. The default is INDEPENDENCE.
+	 * 
+	 * @param k
+	 * @throws NullPointerException if k is null.
+	 */
+	public void setMoveKernel(MoveKernel k) {
+		if(k == null) throw new NullPointerException("Error while setting the move kernel: "
+				+ "Kernel was null.");
+		
+		moveKernel = k;
+	}
+	
+	public MoveKernel getMoveKernel() {
+		return moveKernel;
+	}
+	
+	/**
+	 * Sets a fixed number of Metropolis-Hastings sweeps over the particle set 
+	 * per rejuvenation. Each sweep scores one proposal per particle against 
+	 * the history. The default is one sweep.
+	 * 
+	 * @param n
+	 * @throws IllegalArgumentException if n is not positive.
+	 */
+	public void setNSweeps(int n) {
+		if(n <= 0) throw new IllegalArgumentException("Error while setting the number of sweeps: "
+				+ "Number of sweeps should be a positive integer.");
+		
+		NSweeps   = n;
+		maxSweeps = 0;
+	}
+	
+	/**
+	 * Makes the number of sweeps adaptive: after the first sweep of each 
+	 * rejuvenation, as many sweeps are run that each particle would be moved
+	 * at least once with probability 0.99 at the observed acceptance rate,
+	 * but at most max sweeps.
+	 * 
+	 * @param max
+	 * @throws IllegalArgumentException if max is not positive.
+	 */
+	public void setAdaptiveSweeps(int max) {
+		if(max <= 0) throw new IllegalArgumentException("Error while setting the number of sweeps: "
+				+ "Maximum number of sweeps should be a positive integer.");
+		
+		maxSweeps = max;
+	}
+	
+	/**
+	 * Sets the acceptance rate toward which the scale of the random walk 
+	 * proposals is tuned. The default, 0.234, is the optimal rate for 
+	 * random walk proposals in many dimensions.
+	 * 
+	 * @param rate
+	 * @throws IllegalArgumentException if rate is not between 0 and 1.
+	 */
+	public void setTargetAcceptanceRate(double rate) {
+		if(!(rate > 0 && rate < 1)) throw new IllegalArgumentException("Error while setting the target "
+				+ "acceptance rate: Rate should be between 0 and 1.");
+		
+		targetAcceptanceRate = rate;
+	}
+	
+	/**
+	 * @return Current scale of the random walk proposals, relative to the 
+	 * standard deviations of the particles. Starts at 2.38 / sqrt(d).
+	 */
+	public double getProposalScale() {
+		return proposalScale;
+	}
+	
+	/**
+	 * Turns on delayed acceptance (Christen & Fox 2005: Markov chain Monte 
+	 * Carlo using an approximation. Journal of Computational and Graphical 
+	 * Statistics, 14, 4, pp. 795-810) in the move step. Each proposal is 
+	 * first accepted or rejected against a cheap surrogate of the posterior, 
+	 * a normal distribution fitted to the weighted particles before 
+	 * resampling. Only the proposals that pass are scored with the likelihood 
+	 * over the whole history, and accepted with a second test that corrects 
+	 * for the surrogate, so the particles still target the exact posterior.
+	 * 
+	 * This saves likelihood evaluations when most proposals would be rejected,
+	 * e.g. with random walk, uniform or mixture proposals. With the default 
+	 * GaussianProposal the surrogate equals the proposal and screens nothing 
+	 * out. The savings can be seen from getLastMoveEvaluations.
+	 * 
+	 * @param b
+	 */
+	public void setDelayedAcceptance(boolean b) {
+		delayedAcceptance = b;
+		
+		if(b && surrogate == null) {
+			surrogate          = new GaussianProposal();
+			currentSurrogates  = new double[NParticles];
+			proposalSurrogates = new double[NParticles];
+		}
+	}
+	
+	/**
+	 * Turns on subsampled moves for long histories, after Bardenet, Doucet & 
+	 * Holmes (2014: Towards scaling up Markov chain Monte Carlo: an adaptive 
+	 * subsampling approach. ICML). Instead of scoring each proposal over the 
+	 * whole history, the difference of the log-likelihoods of the proposal 
+	 * and the current particle is estimated from a random batch of 
+	 * observations, and the batch is doubled until the accept/reject decision
+	 * is confident enough; if it grows to half the history, the decision is 
+	 * made exactly.
+	 * 
+	 * The variance of the estimate is reduced with control variates: at each 
+	 * rejuvenation the gradients of the log-likelihood terms are calculated 
+	 * (by central differences) at the weighted mean of the particles, and the 
+	 * first-order Taylor approximation is subtracted from each sampled term 
+	 * and added back exactly in sum. This costs 2d evaluations per observation
+	 * once per rejuvenation, instead of one full-history evaluation per 
+	 * particle per sweep.
+	 * 
+	 * The moves are approximate: each decision can be wrong with about the 
+	 * given error probability. Subsampling is not used if the model has 
+	 * sufficient statistics, or while the history is shorter than twice the 
+	 * initial batch size. It takes precedence over delayed acceptance.
+	 * 
+	 * @param b
+	 */
+	public void setSubsampling(boolean b) {
+		subsampling = b;
+	}
+	
+	/**
+	 * @param batchSize Number of observations sampled first for each proposal, 
+	 * 100 by default.
+	 * @param errorProbability Probability of a wrong decision allowed for each
+	 * proposal, 0.01 by default.
+	 * @throws IllegalArgumentException if batchSize is smaller than 2 or 
+	 * errorProbability is not between 0 and 1.
+	 */
+	public void setSubsampling(int batchSize, double errorProbability) {
+		if(batchSize < 2) throw new IllegalArgumentException("Error while setting the subsampling: "
+				+ "Batch size should be at least 2.");
+		if(!(errorProbability > 0 && errorProbability < 1)) throw new IllegalArgumentException("Error while "
+				+ "setting the subsampling: Error probability should be between 0 and 1.");
+		
+		subsampling      = true;
+		initialBatchSize = batchSize;
+		subsamplingZ     = NormalDistribution.quantile(1 - errorProbability / 2);
+	}
+	
+	
+	// public void writeParticlesToFile(){
+	// TODO
+	//  }
+	//
+	
+
+	
+	/**
+	 * An immutable snapshot of the posterior. Snapshots are published 
+	 * atomically, so this can be called from any thread while another one 
+	 * adds observations, and all the results read from one snapshot are 
+	 * consistent with each other.
+	 * 
+	 * Snapshots are only taken when someone asks for them, so steps after 
+	 * which nobody reads the posterior copy nothing. If the latest snapshot 
+	 * is out of date and no step is running, it is taken now by copying the 
+	 * weights without locking, like a seqlock: if a step starts during the 
+	 * copy, the copy is thrown away. The thread adding the observations is 
+	 * never held up by a reader. If a step is running on another thread, or 
+	 * starts during the copy, this does not wait: it returns the latest 
+	 * snapshot already taken, which may be from an earlier step, and asks 
+	 * for a new one to be taken at the end of the running step. Called from 
+	 * the thread adding the observations (e.g. from a listener), the snapshot
+	 * is of the last completed step.
+	 * 
+	 * @return A snapshot of the posterior.
+	 */
+	public PosteriorSnapshot getSnapshot() {
+		
+		PosteriorSnapshot s = snapshot.get();
+		
+		if(s.getVersion() == completedVersion) return s;
+		
+		if(stepThread == Thread.currentThread()) {
+			SharedThetas shared = sharedThetas();
+			PosteriorSnapshot t = takeSnapshot(shared);
+			
+			publishedThetas = shared;
+			snapshot.set(t);
+			
+			return t;
+		}
+		
+		long stamp = stepLock.tryOptimisticRead();
+		
+		if(stamp != 0) {
+			SharedThetas shared = sharedThetas();
+			PosteriorSnapshot t = takeSnapshot(shared);
+			
+			if(stepLock.validate(stamp)) {
+				publishedThetas = shared;
+				
+				// Another reader or the end of a step may have published a 
+				// newer snapshot in the meantime:
+				
+				return snapshot.accumulateAndGet(t, (a, b) -> b.getVersion() > a.getVersion() ? b : a);
+			}
+		}
+		
+		snapshotRequested.set(true);
+		
+		return s;
+	}
+	
+	/**
+	 * The summaries (means, standard deviations and covariance) are calculated 
+	 * together in one pass from the snapshot returned by getSnapshot() and 
+	 * cached in it, so calling these repeatedly between observations is cheap. They can be 
+	 * called from any thread; to get several results that are guaranteed to 
+	 * belong to the same step, read them from one getSnapshot() instead.
+	 * 
+	 * @return Weighted means of the parameters.
+	 */
+	public double[] getMarginalMeans() {
+		return getSnapshot().getMarginalMeans();
+	}
+	
+	/**
+	 * @return Weighted standard deviations of the parameters.
+	 */
+	public double[] getMarginalSds() {
+		return getSnapshot().getMarginalSds();
+	}
+	
+	/**
+	 * @return Weighted covariance matrix of the parameters, d x d.
+	 */
+	public double[][] getCovariance() {
+		return getSnapshot().getCovariance();
+	}
+	
+	/**
+	 * Summary of the current weights and particles, also in the middle of a 
+	 * step, for the filter's own use.
+	 */
+	private PosteriorSummary getSummary() {
+		if(summary == null || summaryVersion != version) {
+			summary = new PosteriorSummary(particles.getThetas(), particles.getWeights(), 
+					NParticles, model.getNDim());
+			summaryVersion = version;
+		}
+		
+		return summary;
+	}
+	
+	/**
+	 * Weighted quantiles of the marginal distributions of getSnapshot(), 
+	 * see PosteriorSnapshot.getQuantiles. The first call after 
+	 * a step sorts each parameter once; after that every quantile is a 
+	 * binary search.
+	 * 
+	 * @param probs Probabilities between 0 and 1.
+	 * @return d x probs.length matrix: element [j][k] is the probs[k]-quantile
+	 * of parameter j.
+	 * @throws IllegalArgumentException if a probability is not between 0 and 1.
+	 */
+	public double[][] getQuantiles(double[] probs) {
+		return getSnapshot().getQuantiles(probs);
+	}
+	
+	/**
+	 * Equal-tailed credible intervals of the marginal distributions, e.g. 
+	 * level 0.95 gives the 2.5 % and 97.5 % quantiles of each parameter.
+	 * 
+	 * @param level Probability mass inside the interval, between 0 and 1.
+	 * @return d x 2 matrix with the lower and upper limits of each parameter.
+	 */
+	public double[][] getCredibleIntervals(double level) {
+		return getSnapshot().getCredibleIntervals(level);
+	}
+	
+	/**
+	 * Approximate weighted quantiles calculated with a t-digest, see 
+	 * PosteriorSnapshot.getApproximateQuantiles. Useful for quick looks at 
+	 * very large particle sets; use getQuantiles for exact results.
+	 * 
+	 * @param probs Probabilities between 0 and 1.
+	 * @param compression Accuracy of the digest, e.g. 100.
+	 * @return d x probs.length matrix as in getQuantiles.
+	 */
+	public double[][] getApproximateQuantiles(double[] probs, double compression) {
+		return getSnapshot().getApproximateQuantiles(probs, compression);
+	}
+	
+	/**
+	 * Marks the end of a step. If a reader asked for a snapshot while the 
+	 * step was running, it is taken now.
+	 */
+	private void publish() {
+		completedVersion = version;
+		
+		if(snapshotRequested.getAndSet(false)) {
+			SharedThetas shared = sharedThetas();
+			
+			publishedThetas = shared;
+			snapshot.set(takeSnapshot(shared));
+		}
+	}
+	
+	/**
+	 * @return The shared copy of the parameter values if it is of the current
+	 * particles, otherwise a new copy, which the caller publishes once it 
+	 * knows the copy is consistent.
+	 */
+	private SharedThetas sharedThetas() {
+		SharedThetas shared = publishedThetas;
+		long currentVersion = particlesVersion;
+		
+		if(shared != null && shared.particlesVersion == currentVersion) return shared;
+		
+		return new SharedThetas(currentVersion, particles.getThetas().clone());
+	}
+	
+	/**
+	 * Copies the current state into a new snapshot. Only reads the state, so 
+	 * that it can be called by readers without the lock; the result is then
+	 * only valid if no step ran during the call. The log-weights are copied 
+	 * every time.
+	 */
+	private PosteriorSnapshot takeSnapshot(SharedThetas shared) {
+		return new PosteriorSnapshot(version, datapoints.size(), NEff, shared.thetas, 
+				particles.getLogWeights().clone(), particles.getLogNormalizer(), NParticles, model.getNDim());
+	}
+	
+	/**
+	 * Draws particles from the Normal Distribution. Used at the first step
+	 * of the Particle Filter to draw the particles from the prior. 
+	 * 
+	 * @param mu
+	 * @param sd
+	 * @param destThetas N x d matrix the particles are written into
+	 * @param from First row to be written
+	 * @param to One past the last row to be written
+	 * @param random Random number generator
+	 */
+	private void drawParticles(double[] mu, double[] sd, double[] destThetas, 
+			int from, int to, RandomGenerator random) {
+        
+		int NDim = model.getNDim();
+		
+		NormalDistribution.genSTDNormalRand(random, destThetas, from * NDim, to * NDim);
+		
+		for(int i = from; i < to; i++) {
+			for(int j = 0; j < NDim; j++) {
+				destThetas[i * NDim + j] = destThetas[i * NDim + j] * sd[j] + mu[j]; 
+			}
+		}
+	}
+	
+	private void resample() {
+		
+		// The proposal distribution is fitted to the weighted particles 
+		// prior to resampling:
+		
+		if(moveKernel == MoveKernel.INDEPENDENCE) {
+			proposal.fit(particles.getThetas(), particles.getWeights(), NParticles, model.getNDim());
+		} else {
+			proposalCholesky = GaussianProposal.regularisedCholesky(getSummary().getCovariance());
+		}
+		
+		if(delayedAcceptance) {
+			surrogate.fit(particles.getThetas(), particles.getWeights(), NParticles, model.getNDim());
+		}
+		
+		if(isSubsampled()) {
+			fitControlVariates();
+		}
+		
+		if(parallelResampler != null) {
+			parallelResampler.resample(particles.getWeights(), resampledIndices, rng);
+		} else {
+			resampler.resample(particles.getWeights(), resampledIndices, rng);
+		}
+		
+		// The copies of each particle are counted, and the counts compacted 
+		// into (ancestor, multiplicity) pairs in ascending order of ancestor. 
+		// The compaction can be done in place, because the k'th unique 
+		// ancestor is never before index k. The ancestor indices are then 
+		// rewritten in ascending order, so that the copies of an ancestor 
+		// occupy consecutive rows:
+		
+		Arrays.fill(multiplicities, 0);
+		
+		for(int i = 0; i < NParticles; i++) {
+			multiplicities[resampledIndices[i]]++;
+		}
+		
+		NUnique = 0;
+		
+		for(int j = 0; j < NParticles; j++) {
+			if(multiplicities[j] > 0) {
+				ancestors[NUnique]      = j;
+				multiplicities[NUnique] = multiplicities[j];
+				NUnique++;
+			}
+		}
+		
+		for(int k = 0, row = 0; k < NUnique; k++) {
+			for(int m = 0; m < multiplicities[k]; m++) {
+				resampledIndices[row++] = ancestors[k];
+			}
+		}
+		
+		// If needed, the log-likelihoods of the ancestors are rescored once 
+		// each:
+		
+		rescoreAncestors();
+		
+		// The resampled population is written into the back buffer, which 
+		// then becomes the current population. Both parts of the log-targets 
+		// are cached, so the targets of the copies are just sums:
+		
+		double[] backLogLiks   = particles.getBackLogLikelihoods();
+		double[] backLogPriors = particles.getBackLogPriors();
+		
+		forEachChunk(1, (c, from, to) -> {
+			for(int i = from; i < to; i++) {
+				particles.copyToBack(resampledIndices[i], i);
+				currentTargets[i] = backLogLiks[i] + backLogPriors[i];
+			}
+		});
+		
+		particles.swap();
+		
+		version++;
+		particlesVersion = version;
+		
+		particles.setUniformWeights();
+		
+		NEff = NParticles;
+	}
+	
+	/**
+	 * If earlier subsampled moves have left estimates in the log-likelihood 
+	 * cache and the coming move is exact, rescores the unique ancestors of 
+	 * the current resampling over the history.
+	 */
+	private void rescoreAncestors() {
+		
+		if(exactLogLikelihoods || isSubsampled()) return;
+		
+		int NDim = model.getNDim();
+		
+		double[] thetas  = particles.getThetas();
+		double[] logLiks = particles.getLogLikelihoods();
+		
+		DataPoint[] history = datapoints.snapshot();
+		
+		executor.forEachBlock(NUnique, history.length, (c, from, to) -> {
+			double[] theta = new double[NDim];
+			
+			for(int k = from; k < to; k++) {
+				System.arraycopy(thetas, ancestors[k] * NDim, theta, 0, NDim);
+				logLiks[ancestors[k]] = model.logLikelihood(history, theta);
+			}
+		});
+		
+		likelihoodEvaluations += NUnique;
+		exactLogLikelihoods = true;
+	}
+	
+	private void move() {
+		
+		// The particles are moved by sweeping over the particle set one or 
+		// more times, with either kernel:
+		// - Independence: proposals are drawn from the proposal distribution 
+		//   fitted in resample. This is the default choice. The log-densities
+		//   of the current particles under the proposal are needed for the 
+		//   acceptance ratio; they are calculated here, and then updated 
+		//   whenever a proposal is accepted.
+		// - Random walk: proposals are normal steps from the current particles, 
+		//   with the covariance fitted in resample.
+		
+		boolean independent = moveKernel == MoveKernel.INDEPENDENCE;
+		boolean screened    = delayedAcceptance && !isSubsampled();
+		
+		double[] currentThetas = particles.getThetas();
+		
+		if(independent) {
+			forEachChunk(1, (c, from, to) -> proposal.logDensity(currentThetas, from, to, currentLogProposals));
+		}
+		
+		if(screened) {
+			forEachChunk(1, (c, from, to) -> surrogate.logDensity(currentThetas, from, to, currentSurrogates));
+		}
+		
+		DataPoint[] history = datapoints.snapshot();
+		
+		int sweeps = NSweeps;
+		int NAccepted = 0;
+		
+		boolean subsampled = isSubsampled();
+		
+		moveEvaluations = 0;
+		subsampledTerms = 0;
+		
+		for(int s = 0; s < sweeps; s++) {
+			
+			int accepted = subsampled ? subsampledSweep(history, independent) 
+					: sweep(history, independent, screened);
+			NAccepted += accepted;
+			
+			double acceptanceRate = (double) accepted / (double) NParticles;
+			
+			if(moveKernel == MoveKernel.RANDOM_WALK) {
+				proposalScale *= Math.exp(acceptanceRate - targetAcceptanceRate);
+			}
+			
+			if(s == 0 && maxSweeps > 0) {
+				sweeps = adaptiveSweeps(acceptanceRate);
+			}
+		}
+		
+		version++;
+		particlesVersion = version;
+		
+		particles.setUniformWeights();
+		
+		NEff = NParticles;
+		
+		NRejuvenations++;
+		
+		lastAcceptanceRate = (double) NAccepted / ((double) NParticles * sweeps);
+		lastSubsampleSize  = subsampled ? (double) subsampledTerms / ((double) NParticles * sweeps) : Double.NaN;
+		
+		addRecent(recentAcceptanceRatios, lastAcceptanceRate);
+		addRecent(recentMoveEvaluations, moveEvaluations);
+		
+		if(subsampled) {
+			addRecent(recentSubsampleSizes, lastSubsampleSize);
+		}
+		
+		long[] counts = acceptanceByProposal.computeIfAbsent(independent ? proposal.getName() : "RandomWalk", 
+				k -> new long[2]);
+		
+		counts[0] += NAccepted;
+		counts[1] += (long) NParticles * sweeps;
+	}
+	
+	/**
+	 * One Metropolis-Hastings step for every particle. The proposals are 
+	 * drawn into the back buffer of the particle store and scored, a chunk at
+	 * a time; accepted proposals stay in the back buffer and rejected ones 
+	 * are replaced by the current particle, after which the buffers are 
+	 * swapped.
+	 * 
+	 * @param independent Whether the independence kernel is used.
+	 * @param screened Whether the proposals are first screened against the 
+	 * surrogate, see setDelayedAcceptance.
+	 * @return Number of accepted proposals.
+	 */
+	private int sweep(DataPoint[] history, boolean independent, boolean screened) {
+		
+		int NDim = model.getNDim();
+		
+		double[] thetas          = particles.getThetas();
+		double[] proposalThetas  = particles.getBackThetas();
+		double[] proposalTargets = particles.getBackLogWeights();
+		double[] proposalLogLiks = particles.getBackLogLikelihoods();
+		
+		double[] proposalLogPriors = particles.getBackLogPriors();
+		
+		// The log-targets (log-likelihood + log-prior) of the current particles 
+		// were calculated in resampling, once per unique ancestor, and are 
+		// updated when a proposal is accepted, so only the proposals have to 
+		// be scored. The back log-weight array is used for holding their 
+		// targets. If the model supports it, this is done from the sufficient 
+		// statistics instead of the whole history.
+		
+		double[] targets = currentTargets;
+		
+		// Independence proposals need the ratio of the proposal densities; 
+		// random walk proposals are symmetric:
+		
+		double scale = proposalScale;
+		
+		SplittableRandom[] streams = splitStreams();
+		
+		int[] NAccepted  = new int[streams.length];
+		int[] NEvaluated = new int[streams.length];
+		
+		int cost = statistics == null ? history.length : 1;
+		
+		forEachChunk(cost, (c, from, to) -> {
+			SplittableRandom random = streams[c];
+			
+			if(independent) {
+				proposal.sample(random, proposalThetas, from, to);
+				proposal.logDensity(proposalThetas, from, to, proposalLogProposals);
+			} else {
+				MultivariateNormalDistribution.genRand(proposalCholesky, NDim, random, proposalThetas, from, to);
+				
+				for(int k = from * NDim; k < to * NDim; k++) {
+					proposalThetas[k] = thetas[k] + scale * proposalThetas[k];
+				}
+			}
+			
+			// With delayed acceptance, the first stage accepts or rejects as if 
+			// the surrogate were the target. Rejected proposals are replaced 
+			// right away; the rest are the candidates scored below:
+			
+			int[] candidates = new int[to - from];
+			int   NCandidates = 0;
+			
+			if(screened) {
+				surrogate.logDensity(proposalThetas, from, to, proposalSurrogates);
+				
+				for(int i = from; i < to; i++) {
+					double ratio = proposalSurrogates[i] - currentSurrogates[i];
+					
+					if(independent) {
+						ratio += currentLogProposals[i] - proposalLogProposals[i];
+					}
+					
+					if(Math.log(random.nextDouble()) < ratio || ratio > 0) {
+						candidates[NCandidates++] = i;
+					} else {
+						particles.copyToBack(i, i);
+					}
+				}
+			} else {
+				for(int i = from; i < to; i++) {
+					candidates[NCandidates++] = i;
+				}
+			}
+			
+			scoreProposals(history, proposalThetas, candidates, NCandidates, proposalLogLiks);
+			
+			NEvaluated[c] = NCandidates;
+			
+			double[] theta = new double[NDim];
+			
+			for(int r = 0; r < NCandidates; r++) {
+				int i = candidates[r];
+				
+				System.arraycopy(proposalThetas, i * NDim, theta, 0, NDim);
+				
+				proposalLogPriors[i] = model.logPrior(theta);
+				proposalTargets[i]   = proposalLogLiks[i] + proposalLogPriors[i];
+				
+				double ratio = proposalTargets[i] - targets[i];
+				
+				// The second stage of delayed acceptance divides out the 
+				// surrogate ratio the first stage accepted with; the proposal 
+				// densities cancel:
+				
+				if(screened) {
+					ratio -= proposalSurrogates[i] - currentSurrogates[i];
+				} else if(independent) {
+					ratio += currentLogProposals[i] - proposalLogProposals[i];
+				}
+				
+				if(Math.log(random.nextDouble()) < ratio || ratio > 0) {
+					targets[i] = proposalTargets[i];
+					
+					if(independent) currentLogProposals[i] = proposalLogProposals[i];
+					if(screened)    currentSurrogates[i]   = proposalSurrogates[i];
+					
+					NAccepted[c]++;
+				} else {
+					particles.copyToBack(i, i);
+				}
+			}
+		});
+		
+		particles.swap();
+		
+		long evaluated = IntStream.of(NEvaluated).sum();
+		
+		likelihoodEvaluations += evaluated;
+		moveEvaluations       += evaluated;
+		
+		return IntStream.of(NAccepted).sum();
+	}
+	
+	/**
+	 * Like sweep, but the accept/reject decisions are made from subsampled 
+	 * estimates of the log-likelihood differences, see setSubsampling. The 
+	 * log-likelihoods of accepted proposals are cached as the log-likelihood 
+	 * of the current particle plus the estimated difference.
+	 * 
+	 * @return Number of accepted proposals.
+	 */
+	private int subsampledSweep(DataPoint[] history, boolean independent) {
+		
+		int NDim = model.getNDim();
+		int n    = history.length;
+		
+		double[] thetas          = particles.getThetas();
+		double[] logLiks         = particles.getLogLikelihoods();
+		double[] proposalThetas  = particles.getBackThetas();
+		double[] proposalLogLiks = particles.getBackLogLikelihoods();
+		
+		double[] logPriors         = particles.getLogPriors();
+		double[] proposalLogPriors = particles.getBackLogPriors();
+		
+		double scale = proposalScale;
+		
+		SplittableRandom[] streams = splitStreams();
+		
+		int[]  NAccepted  = new int[streams.length];
+		int[]  NEvaluated = new int[streams.length];
+		long[] NTerms     = new long[streams.length];
+		
+		// Until a proposal has been accepted on an estimate, the cached 
+		// log-likelihoods of the current particles are exact, and an exact 
+		// decision only has to score the proposal:
+		
+		boolean exact = exactLogLikelihoods;
+		
+		forEachChunk(2 * initialBatchSize, (c, from, to) -> {
+			SplittableRandom random = streams[c];
+			
+			if(independent) {
+				proposal.sample(random, proposalThetas, from, to);
+				proposal.logDensity(proposalThetas, from, to, proposalLogProposals);
+			} else {
+				MultivariateNormalDistribution.genRand(proposalCholesky, NDim, random, proposalThetas, from, to);
+				
+				for(int k = from * NDim; k < to * NDim; k++) {
+					proposalThetas[k] = thetas[k] + scale * proposalThetas[k];
+				}
+			}
+			
+			double[]    current  = new double[NDim];
+			double[]    proposed = new double[NDim];
+			double[]    delta    = new double[NDim];
+			DataPoint[] one      = new DataPoint[1];
+			
+			for(int i = from; i < to; i++) {
+				System.arraycopy(thetas, i * NDim, current, 0, NDim);
+				System.arraycopy(proposalThetas, i * NDim, proposed, 0, NDim);
+				
+				double proxy = 0;
+				
+				for(int j = 0; j < NDim; j++) {
+					delta[j] = proposed[j] - current[j];
+					proxy   += gradientSum[j] * delta[j];
+				}
+				
+				// The proposal is accepted if the log-likelihood difference 
+				// exceeds the threshold:
+				
+				proposalLogPriors[i] = model.logPrior(proposed);
+				
+				double threshold = Math.log(random.nextDouble()) - proposalLogPriors[i] + logPriors[i];
+				
+				if(independent) {
+					threshold -= currentLogProposals[i] - proposalLogProposals[i];
+				}
+				
+				// Residuals of the sampled terms around their first-order 
+				// approximation; the batch is doubled until the estimate is 
+				// far enough from the threshold:
+				
+				double sum = 0, sumOfSquares = 0;
+				int    m = 0, batch = initialBatchSize;
+				
+				double  difference;
+				boolean decided = false;
+				
+				while(true) {
+					for(; m < batch; m++) {
+						int k = random.nextInt(n);
+						
+						one[0] = history[k];
+						
+						double r = model.logLikelihood(one, proposed) - model.logLikelihood(one, current);
+						
+						for(int j = 0; j < NDim; j++) {
+							r -= observationGradients[k * NDim + j] * delta[j];
+						}
+						
+						sum          += r;
+						sumOfSquares += r * r;
+					}
+					
+					double mean     = sum / m;
+					double variance = Math.max(0, (sumOfSquares - m * mean * mean) / (m - 1));
+					
+					difference = proxy + n * mean;
+					
+					if(Math.abs(difference - threshold) > subsamplingZ * n * Math.sqrt(variance / m)) {
+						decided = true;
+						break;
+					}
+					
+					if(2 * batch >= n) break;
+					
+					batch *= 2;
+				}
+				
+				NTerms[c] += m;
+				
+				if(!decided && exact) {
+					difference = model.logLikelihood(history, proposed) - logLiks[i];
+					NEvaluated[c]++;
+				} else if(!decided) {
+					difference = model.logLikelihood(history, proposed) - model.logLikelihood(history, current);
+					NEvaluated[c] += 2;
+				}
+				
+				if(difference > threshold) {
+					proposalLogLiks[i] = logLiks[i] + difference;
+					
+					if(independent) currentLogProposals[i] = proposalLogProposals[i];
+					
+					NAccepted[c]++;
+				} else {
+					particles.copyToBack(i, i);
+				}
+			}
+		});
+		
+		particles.swap();
+		
+		long evaluated = IntStream.of(NEvaluated).sum();
+		
+		likelihoodEvaluations += evaluated;
+		moveEvaluations       += evaluated;
+		subsampledTerms       += LongStream.of(NTerms).sum();
+		
+		int accepted = IntStream.of(NAccepted).sum();
+		
+		if(accepted > 0) exactLogLikelihoods = false;
+		
+		return accepted;
+	}
+	
+	/**
+	 * @return Whether the next move step is subsampled, see setSubsampling.
+	 */
+	private boolean isSubsampled() {
+		return subsampling && statistics == null && datapoints.size() >= 2 * initialBatchSize;
+	}
+	
+	/**
+	 * Sets the reference point of the control variates to the weighted mean 
+	 * of the particles, and calculates the gradients of the log-likelihood 
+	 * terms of all the observations at it, by central differences with steps
+	 * proportional to the weighted standard deviations.
+	 */
+	private void fitControlVariates() {
+		
+		int NDim = model.getNDim();
+		
+		DataPoint[] history = datapoints.snapshot();
+		
+		int n = history.length;
+		
+		referenceTheta = getSummary().getMeans();
+		
+		double[] sds   = getSummary().getSds();
+		double[] steps = new double[NDim];
+		
+		for(int j = 0; j < NDim; j++) {
+			steps[j] = sds[j] > 0 ? 1e-4 * sds[j] : 1e-6 * Math.max(1, Math.abs(referenceTheta[j]));
+		}
+		
+		if(observationGradients.length < n * NDim) {
+			observationGradients = new double[2 * n * NDim];
+		}
+		
+		executor.forEachBlock(n, 2 * NDim, (c, from, to) -> {
+			double[]    theta = referenceTheta.clone();
+			DataPoint[] one   = new DataPoint[1];
+			
+			for(int k = from; k < to; k++) {
+				one[0] = history[k];
+				
+				for(int j = 0; j < NDim; j++) {
+					theta[j] = referenceTheta[j] + steps[j];
+					double up = model.logLikelihood(one, theta);
+					
+					theta[j] = referenceTheta[j] - steps[j];
+					double down = model.logLikelihood(one, theta);
+					
+					theta[j] = referenceTheta[j];
+					
+					observationGradients[k * NDim + j] = (up - down) / (2 * steps[j]);
+				}
+			}
+		});
+		
+		gradientSum = new double[NDim];
+		
+		for(int k = 0; k < n; k++) {
+			for(int j = 0; j < NDim; j++) {
+				gradientSum[j] += observationGradients[k * NDim + j];
+			}
+		}
+	}
+	
+	/**
+	 * Calculates the log-likelihoods of the proposals in the given rows, 
+	 * either from the sufficient statistics or over the history. When only 
+	 * some of the rows of the chunk are scored, they are first gathered into 
+	 * a contiguous matrix so that the model can still score them as a batch.
+	 * 
+	 * @param rows Indices of the rows to be scored, in ascending order.
+	 * @param NRows Number of rows in use.
+	 */
+	private void scoreProposals(DataPoint[] history, double[] proposalThetas, int[] rows, int NRows, 
+			double[] out) {
+		
+		if(NRows == 0) return;
+		
+		int NDim = model.getNDim();
+		
+		if(statistics != null) {
+			double[] theta = new double[NDim];
+			
+			for(int r = 0; r < NRows; r++) {
+				System.arraycopy(proposalThetas, rows[r] * NDim, theta, 0, NDim);
+				out[rows[r]] = ((SufficientStatisticsModel) model).logLikelihood(statistics, theta);
+			}
+		} else if(rows[NRows - 1] - rows[0] == NRows - 1) {
+			model.logLikelihoods(history, proposalThetas, rows[0], rows[NRows - 1] + 1, out);
+		} else {
+			double[] gathered = new double[NRows * NDim];
+			double[] logLiks  = new double[NRows];
+			
+			for(int r = 0; r < NRows; r++) {
+				System.arraycopy(proposalThetas, rows[r] * NDim, gathered, r * NDim, NDim);
+			}
+			
+			model.logLikelihoods(history, gathered, 0, NRows, logLiks);
+			
+			for(int r = 0; r < NRows; r++) {
+				out[rows[r]] = logLiks[r];
+			}
+		}
+	}
+	
+	/**
+	 * A particle is moved at least once in n sweeps with probability 
+	 * 1 - (1 - a)^n, if each sweep accepts with probability a. This gives 
+	 * the n for which that is 0.99, limited to [1, maxSweeps].
+	 */
+	private int adaptiveSweeps(double acceptanceRate) {
+		
+		if(acceptanceRate >= 1) return 1;
+		if(acceptanceRate <= 0) return maxSweeps;
+		
+		double n = Math.ceil(Math.log(0.01) / Math.log(1 - acceptanceRate));
+		
+		return (int) Math.max(1, Math.min(maxSweeps, n));
+	}
+	
+	/**
+	 * Scores the observations ys[from], ..., ys[to - 1] one at a time for 
+	 * every particle. A single observation is applied to the log-weights and 
+	 * the cumulative log-likelihoods in the same pass it is scored in; for 
+	 * several, the running values after each observation are kept in the 
+	 * pending arrays, and commitWeights applies them later. After each 
+	 * observation, the sums of the new weights and of their squares are 
+	 * accumulated for the effective sample size and the log-normaliser, which
+	 * are left in prefixNEff and prefixLogNormalizers; nothing is normalised.
+	 * 
+	 * The effective sample size is (sum w)^2 / sum(w^2), or 0 if every 
+	 * particle has zero likelihood.
+	 * 
+	 * @return The number of observations after which the effective sample 
+	 * size first falls below the resampling limit, or to - from if it does not.
+	 */
+	private int reweight(DataPoint[] ys, int from, int to) {
+		
+		int NObservations = to - from;
+		boolean single = NObservations == 1;
+		
+		DataPoint[][] observations = new DataPoint[NObservations][];
+		
+		for(int k = 0; k < NObservations; k++) {
+			observations[k] = ys.length == 1 ? ys : new DataPoint[] {ys[from + k]};
+		}
+		
+		if(!single && pendingLogWeights == null) {
+			pendingLogWeights     = new double[NParticles];
+			pendingLogLikelihoods = new double[NParticles];
+		}
+		
+		double[] thetas     = particles.getThetas();
+		double[] logWeights = particles.getLogWeights();
+		double[] logLiks    = particles.getLogLikelihoods();
+		
+		double[] runningLogWeights = single ? logWeights : pendingLogWeights;
+		double[] runningLogLiks    = single ? logLiks    : pendingLogLikelihoods;
+		
+		int NBlocks = ChunkedExecutor.getNBlocks(NParticles);
+		
+		forEachChunk(NObservations, (c, first, last) -> {
+			
+			if(!single) {
+				System.arraycopy(logWeights, first, runningLogWeights, first, last - first);
+				System.arraycopy(logLiks, first, runningLogLiks, first, last - first);
+			}
+			
+			for(int k = 0; k < NObservations; k++) {
+				model.logLikelihoods(observations[k], thetas, first, last, increments);
+				
+				// Streaming log-sum-exp: the sums are kept relative to the largest
+				// log-weight seen so far, and rescaled when a larger one comes:
+				
+				double max = Double.NEGATIVE_INFINITY;
+				double sum = 0, sumOfSquares = 0;
+				
+				for(int i = first; i < last; i++) {
+					double x = runningLogWeights[i] + increments[i];
+					
+					runningLogWeights[i] = x;
+					runningLogLiks[i]   += increments[i];
+					
+					// Particles with zero likelihood have zero weight; they are 
+					// skipped so that exp(-Infinity - -Infinity) never comes up:
+					
+					if(x == Double.NEGATIVE_INFINITY) continue;
+					
+					if(x > max) {
+						double r = Math.exp(max - x);
+						
+						sum          *= r;
+						sumOfSquares *= r * r;
+						max           = x;
+					}
+					
+					double w = Math.exp(x - max);
+					
+					sum          += w;
+					sumOfSquares += w * w;
+				}
+				
+				blockMax[k * NBlocks + c]           = max;
+				blockSums[k * NBlocks + c]          = sum;
+				blockSumsOfSquares[k * NBlocks + c] = sumOfSquares;
+			}
+		});
+		
+		likelihoodEvaluations += (long) NParticles * NObservations;
+		
+		for(int k = 0; k < NObservations; k++) {
+			combineBlocks(k, NBlocks);
+			
+			if(prefixNEff[k] / NParticles < resamplingLimit) return k + 1;
+		}
+		
+		return NObservations;
+	}
+	
+	/**
+	 * Combines the per-block sums after observation k of the segment into 
+	 * prefixNEff[k] and prefixLogNormalizers[k].
+	 */
+	private void combineBlocks(int k, int NBlocks) {
+		
+		int offset = k * NBlocks;
+		
+		double max = Double.NEGATIVE_INFINITY;
+		
+		for(int c = offset; c < offset + NBlocks; c++) {
+			max = Math.max(max, blockMax[c]);
+		}
+		
+		prefixLogNormalizers[k] = max;
+		prefixNEff[k]           = 0;
+		
+		// Every particle has zero weight:
+		
+		if(max == Double.NEGATIVE_INFINITY) return;
+		
+		double sum = 0, sumOfSquares = 0;
+		
+		for(int c = offset; c < offset + NBlocks; c++) {
+			if(blockMax[c] == Double.NEGATIVE_INFINITY) continue;
+			
+			double r = Math.exp(blockMax[c] - max);
+			
+			sum          += blockSums[c] * r;
+			sumOfSquares += blockSumsOfSquares[c] * r * r;
+		}
+		
+		prefixLogNormalizers[k] = max + Math.log(sum);
+		prefixNEff[k]           = sum * sum / sumOfSquares;
+	}
+	
+	/**
+	 * Makes the weights calculated by reweight the current ones. The particle 
+	 * store normalises them when they are next read.
+	 * 
+	 * @param pending Whether the weights and cumulative log-likelihoods are 
+	 * still in the pending arrays, i.e. more than one observation was scored.
+	 */
+	private void commitWeights(boolean pending) {
+		
+		if(pending) {
+			System.arraycopy(pendingLogWeights, 0, particles.getLogWeights(), 0, NParticles);
+			System.arraycopy(pendingLogLikelihoods, 0, particles.getLogLikelihoods(), 0, NParticles);
+		}
+		
+		particles.setLogNormalizer(pendingLogNormalizer);
+		
+		version++;
+	}
+	
+	/**
+	 * Splits one random number stream per block off the filter's generator. 
+	 * This is done sequentially, so the streams only depend on the seed.
+	 */
+	private SplittableRandom[] splitStreams() {
+		SplittableRandom[] streams = new SplittableRandom[ChunkedExecutor.getNBlocks(NParticles)];
+		
+		for(int c = 0; c < streams.length; c++) {
+			streams[c] = rng.split();
+		}
+		
+		return streams;
+	}
+	
+	/**
+	 * Runs the task over contiguous blocks of the particle indices [0, NParticles), 
+	 * in parallel unless the executor decides the pass is too cheap for that. 
+	 * The task gets the index of the block and the half-open range [from, to) 
+	 * it is responsible for.
+	 * 
+	 * @param cost Rough amount of work per particle, in observations to be scored.
+	 */
+	private void forEachChunk(int cost, ChunkedExecutor.BlockTask task) {
+		executor.forEachBlock(NParticles, cost, task);
+	}
+	
+	//
+	
+	public Resampler getResampler() {
+		return resampler;
+	}
+	
+	public double getResamplingLimit() {
+		return resamplingLimit;
+	}
+	
+	/**
+	 * Returns a read-only view of the particle set of getSnapshot(). 
+	 * Each element of the returned list is created on access and holds a 
+	 * copy of the parameter values, and the list does not change when more 
+	 * observations are added.
+	 * 
+	 * @return List view of the particles.
+	 */
+	public List<Particle> getParticles(){
+		return getSnapshot().getParticles();
+	}
+	
+	/**
+	 * @return Unmodifiable view of the observations added so far.
+	 */
+	public List<DataPoint> getDataPoints(){
+		return datapoints.asList();
+	}
+	
+	/**
+	 * @return Number of times the set has been rejuvenated. The results of 
+	 * every rejuvenation are reported to the listeners, see addListener.
+	 */
+	public int getNRejuvenations() {
+		return NRejuvenations;
+	}
+	
+	/**
+	 * @return Fraction of accepted proposals in the latest rejuvenation, NaN 
+	 * if the set has not been rejuvenated.
+	 */
+	public double getLastAcceptanceRate() {
+		return lastAcceptanceRate;
+	}
+	
+	/**
+	 * @return Number of proposals scored with the likelihood in the latest 
+	 * rejuvenation, over all its sweeps. Without delayed acceptance this is 
+	 * the number of particles times the number of sweeps.
+	 */
+	public long getLastMoveEvaluations() {
+		return moveEvaluations;
+	}
+	
+	/**
+	 * @return Mean number of observations sampled per proposal in the latest
+	 * rejuvenation, NaN if it was not subsampled, see setSubsampling.
+	 */
+	public double getLastSubsampleSize() {
+		return lastSubsampleSize;
+	}
+	
+	/**
+	 * @return Acceptance rates of the latest rejuvenations, oldest first; at 
+	 * most the last 1000 are kept. For the whole history, register a 
+	 * listener, see addListener.
+	 */
+	public ArrayList<Double> getAcceptanceRatios() {
+		return new ArrayList<Double>(recentAcceptanceRatios);
+	}
+	
+	/**
+	 * @return Number of proposals scored with the likelihood in each of the 
+	 * latest rejuvenations, over all its sweeps, oldest first; at most the 
+	 * last 1000 are kept. Without delayed acceptance this is the number of 
+	 * particles times the number of sweeps.
+	 */
+	public ArrayList<Long> getMoveEvaluations() {
+		return new ArrayList<Long>(recentMoveEvaluations);
+	}
+	
+	/**
+	 * @return Mean number of observations sampled per proposal in each of the 
+	 * latest subsampled rejuvenations, oldest first; at most the last 1000 
+	 * are kept. See setSubsampling.
+	 */
+	public ArrayList<Double> getSubsampleSizes() {
+		return new ArrayList<Double>(recentSubsampleSizes);
+	}
+	
+	private static <T> void addRecent(ArrayDeque<T> recent, T value) {
+		if(recent.size() == MAX_RECENT_REJUVENATIONS) {
+			recent.removeFirst();
+		}
+		
+		recent.addLast(value);
 	}
 	
 }
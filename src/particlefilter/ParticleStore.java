@@ -0,0 +1,215 @@
+package particlefilter;
+
+import java.util.Arrays;
+
+/**
+ * Storage for the particle population. Instead of a list of Particle objects
+ * the parameter values are kept in one contiguous N x d matrix (row-major,
+ * particle i occupying thetas[i*d] ... thetas[i*d + d - 1]) and the log-weights
+ * in a primitive array of length N.
+ *
+ * The log-weights are kept unnormalised, together with their log-normaliser 
+ * log(sum(exp(logWeights))), which the filter updates as it reweights. The 
+ * normalised linear-scale weights are only calculated when someone asks for 
+ * them, so steps after which nobody reads the weights cost no extra pass.
+ * 
+ * Next to the weights, each particle carries its cumulative log-likelihood, 
+ * i.e. the log-likelihood of all the observations seen so far. It is 
+ * accumulated in the reweighting step, so that the particles do not have to
+ * be rescored against the whole history when the set is rejuvenated, and its
+ * log-prior, which only changes when the parameter values do.
+ * 
+ * The store is double-buffered: resampling and moving write the new population
+ * into the back buffer and then swap, so nothing has to be allocated during
+ * rejuvenation.
+ *
+ * @author Joni
+ *
+ */
+
+class ParticleStore {
+
+	private final int NParticles;
+	private final int NDim;
+
+	private double[] thetas;
+	private double[] logWeights;
+	private double[] logLikelihoods;
+	private double[] logPriors;
+	
+	// Linear-scale normalised weights, calculated lazily from the log-weights 
+	// when normalized is false; not double-buffered.
+	private double[] weights;
+	private double   logNormalizer = 0;
+	private boolean  normalized    = true;
+
+	private double[] backThetas;
+	private double[] backLogWeights;
+	private double[] backLogLikelihoods;
+	private double[] backLogPriors;
+
+	ParticleStore(int nparticles, int ndim){
+		NParticles = nparticles;
+		NDim       = ndim;
+
+		thetas         = new double[nparticles * ndim];
+		logWeights     = new double[nparticles];
+		backThetas     = new double[nparticles * ndim];
+		backLogWeights = new double[nparticles];
+		
+		logLikelihoods     = new double[nparticles];
+		backLogLikelihoods = new double[nparticles];
+		
+		logPriors     = new double[nparticles];
+		backLogPriors = new double[nparticles];
+		
+		weights = new double[nparticles];
+	}
+
+	int size() {
+		return NParticles;
+	}
+
+	int getNDim() {
+		return NDim;
+	}
+
+	/**
+	 * @return The N x d matrix of the current parameter values, row-major.
+	 */
+	double[] getThetas() {
+		return thetas;
+	}
+
+	/**
+	 * @return Unnormalised log-weights; the normalised log-weight of particle 
+	 * i is logWeights[i] - getLogNormalizer().
+	 */
+	double[] getLogWeights() {
+		return logWeights;
+	}
+	
+	double getLogNormalizer() {
+		return logNormalizer;
+	}
+	
+	/**
+	 * Tells the store that the log-weights have been changed and that their 
+	 * log-sum-exp is now logNormalizer_. The weights are normalised again the
+	 * next time they are asked for.
+	 */
+	void setLogNormalizer(double logNormalizer_) {
+		logNormalizer = logNormalizer_;
+		normalized    = false;
+	}
+
+	/**
+	 * @return Normalised weights on the linear scale. If the log-weights have 
+	 * changed since the last call, they are normalised first, in one pass.
+	 */
+	double[] getWeights() {
+		if(!normalized) normalize();
+		
+		return weights;
+	}
+	
+	/**
+	 * Subtracts the log-normaliser from the log-weights and calculates the 
+	 * linear-scale weights, so that the log-weights do not drift when the 
+	 * set is not resampled for a long time.
+	 */
+	private void normalize() {
+		for(int i = 0; i < NParticles; i++) {
+			logWeights[i] -= logNormalizer;
+			weights[i]     = Math.exp(logWeights[i]);
+		}
+		
+		logNormalizer = 0;
+		normalized    = true;
+	}
+	
+	/**
+	 * Gives every particle the weight 1 / N, as after resampling.
+	 */
+	void setUniformWeights() {
+		Arrays.fill(logWeights, -Math.log(NParticles));
+		Arrays.fill(weights, 1.0 / NParticles);
+		
+		logNormalizer = 0;
+		normalized    = true;
+	}
+
+	/**
+	 * @return Cumulative log-likelihoods of the current particles.
+	 */
+	double[] getLogLikelihoods() {
+		return logLikelihoods;
+	}
+
+	/**
+	 * @return Log-priors of the current particles.
+	 */
+	double[] getLogPriors() {
+		return logPriors;
+	}
+
+	/**
+	 * @return The back buffer, into which the next population is written.
+	 */
+	double[] getBackThetas() {
+		return backThetas;
+	}
+
+	double[] getBackLogWeights() {
+		return backLogWeights;
+	}
+
+	double[] getBackLogLikelihoods() {
+		return backLogLikelihoods;
+	}
+
+	double[] getBackLogPriors() {
+		return backLogPriors;
+	}
+
+	/**
+	 * Makes the back buffer the current population; the old population
+	 * becomes the back buffer and will be overwritten on the next swap.
+	 */
+	void swap() {
+		double[] tmpThetas = thetas;
+		thetas     = backThetas;
+		backThetas = tmpThetas;
+
+		double[] tmpWeights = logWeights;
+		logWeights     = backLogWeights;
+		backLogWeights = tmpWeights;
+
+		double[] tmpLogLiks = logLikelihoods;
+		logLikelihoods     = backLogLikelihoods;
+		backLogLikelihoods = tmpLogLiks;
+
+		double[] tmpLogPriors = logPriors;
+		logPriors     = backLogPriors;
+		backLogPriors = tmpLogPriors;
+	}
+
+	/**
+	 * Copies the parameter values of particle i into dest, which should be
+	 * of length getNDim().
+	 */
+	void copyTheta(int i, double[] dest) {
+		System.arraycopy(thetas, i * NDim, dest, 0, NDim);
+	}
+
+	/**
+	 * Copies row i of the current population to row j of the back buffer.
+	 */
+	void copyToBack(int i, int j) {
+		System.arraycopy(thetas, i * NDim, backThetas, j * NDim, NDim);
+		backLogWeights[j]     = logWeights[i];
+		backLogLikelihoods[j] = logLikelihoods[i];
+		backLogPriors[j]      = logPriors[i];
+	}
+
+}
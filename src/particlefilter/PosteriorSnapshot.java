@@ -0,0 +1,334 @@
+package particlefilter;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import statistical_functions.WeightedTDigest;
+
+/**
+ * An immutable copy of the posterior after one step of the filter. The filter
+ * publishes snapshots through an atomic reference, so any number of threads 
+ * can read a consistent posterior without locking and without stalling the 
+ * thread that updates the filter. Snapshots are taken on demand, see 
+ * ParticleFilter.getSnapshot.
+ * 
+ * Taking a snapshot costs one copy of the log-weights; the parameter values 
+ * are only copied after they have changed, i.e. after a rejuvenation, and 
+ * consecutive snapshots share them otherwise. Everything
+ * else (the normalised weights, the summaries and the sorted marginals for
+ * the quantiles) is calculated by the first reader that needs it and then
+ * cached in the snapshot. Two readers asking at the same time may both
+ * calculate the same result, but neither will see a partial one.
+ * 
+ * @author Joni
+ *
+ */
+
+public final class PosteriorSnapshot {
+	
+	private final long   version;
+	private final int    NObservations;
+	private final double NEff;
+	
+	private final int NParticles;
+	private final int NDim;
+	
+	// N x d, row-major; shared with the other snapshots of the same particles
+	// and never written after publication:
+	private final double[] thetas;
+	
+	private final double[] logWeights;
+	private final double   logNormalizer;
+	
+	// Calculated on demand:
+	
+	private volatile double[]         weights;
+	private volatile PosteriorSummary summary;
+	private volatile SortedMarginals  sortedMarginals;
+	
+	/**
+	 * @param version_ Version of the filter state the snapshot was taken of.
+	 * @param nobservations Number of observations processed so far.
+	 * @param neff Effective sample size of the weights.
+	 * @param thetas_ N x d matrix of parameter values, not copied.
+	 * @param logWeights_ Unnormalised log-weights, not copied.
+	 * @param logNormalizer_ Log-sum-exp of the log-weights.
+	 * @param nparticles N
+	 * @param ndim d
+	 */
+	PosteriorSnapshot(long version_, int nobservations, double neff, double[] thetas_,
+			double[] logWeights_, double logNormalizer_, int nparticles, int ndim){
+		
+		version       = version_;
+		NObservations = nobservations;
+		NEff          = neff;
+		
+		thetas        = thetas_;
+		logWeights    = logWeights_;
+		logNormalizer = logNormalizer_;
+		
+		NParticles = nparticles;
+		NDim       = ndim;
+	}
+	
+	/**
+	 * Snapshot of a weighted sample given by the caller, e.g. particles saved 
+	 * from an earlier run, so that it can be summarised with the same methods.
+	 * The version and the number of observations are zero.
+	 * 
+	 * @param thetas_ N x d matrix of parameter values, copied.
+	 * @param weights_ Weights of the N values, need not be normalised.
+	 * @throws IllegalArgumentException if the sample is empty, the rows or the
+	 * weights do not match, or a weight is negative or they sum to zero.
+	 */
+	public PosteriorSnapshot(double[][] thetas_, double[] weights_){
+		
+		if(thetas_.length == 0 || thetas_.length != weights_.length) throw new IllegalArgumentException("Error while creating a snapshot: "
+				+ "Expected a weight for each of at least one parameter vector, got " + thetas_.length 
+				+ " vectors and " + weights_.length + " weights.");
+		
+		NParticles = thetas_.length;
+		NDim       = thetas_[0].length;
+		
+		thetas     = new double[NParticles * NDim];
+		logWeights = new double[NParticles];
+		
+		double sum = 0, sumOfSquares = 0;
+		
+		for(int i = 0; i < NParticles; i++) {
+			if(thetas_[i].length != NDim) throw new IllegalArgumentException("Error while creating a snapshot: "
+					+ "Parameter vector " + i + " has " + thetas_[i].length + " elements, expected " + NDim);
+			
+			if(!(weights_[i] >= 0 && weights_[i] < Double.POSITIVE_INFINITY)) throw new IllegalArgumentException("Error while creating a snapshot: "
+					+ "Weights should be finite and non-negative, got " + weights_[i]);
+			
+			System.arraycopy(thetas_[i], 0, thetas, i * NDim, NDim);
+			
+			logWeights[i] = Math.log(weights_[i]);
+			
+			sum          += weights_[i];
+			sumOfSquares += weights_[i] * weights_[i];
+		}
+		
+		if(!(sum > 0)) throw new IllegalArgumentException("Error while creating a snapshot: "
+				+ "Weights sum to zero.");
+		
+		version       = 0;
+		NObservations = 0;
+		NEff          = sum * sum / sumOfSquares;
+		logNormalizer = Math.log(sum);
+	}
+	
+	/**
+	 * @return Version of the filter state, increases every time the weights
+	 * or the particles change. Snapshots with the same version are equal.
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * @return Number of observations the posterior is conditioned on.
+	 */
+	public int getNObservations() {
+		return NObservations;
+	}
+	
+	public double getNEff() {
+		return NEff;
+	}
+	
+	public int getNParticles() {
+		return NParticles;
+	}
+	
+	public int getNDim() {
+		return NDim;
+	}
+	
+	/**
+	 * @return Normalised weights of the particles, a copy.
+	 */
+	public double[] getWeights() {
+		return weights().clone();
+	}
+	
+	/**
+	 * @return Weighted means of the parameters.
+	 */
+	public double[] getMarginalMeans() {
+		return summary().getMeans();
+	}
+	
+	/**
+	 * @return Weighted standard deviations of the parameters.
+	 */
+	public double[] getMarginalSds() {
+		return summary().getSds();
+	}
+	
+	/**
+	 * @return Weighted covariance matrix of the parameters, d x d.
+	 */
+	public double[][] getCovariance() {
+		return summary().getCovariance();
+	}
+	
+	/**
+	 * Weighted quantiles of the marginal distributions. The first call sorts
+	 * each parameter once; after that every quantile is a binary search.
+	 * 
+	 * The p-quantile is the smallest particle value at which the cumulative
+	 * weight reaches p, so the results are always values of actual particles.
+	 * 
+	 * @param probs Probabilities between 0 and 1.
+	 * @return d x probs.length matrix: element [j][k] is the probs[k]-quantile
+	 * of parameter j.
+	 * @throws IllegalArgumentException if a probability is not between 0 and 1.
+	 */
+	public double[][] getQuantiles(double[] probs) {
+		
+		checkProbabilities(probs);
+		
+		SortedMarginals marginals = sortedMarginals();
+		
+		double[][] quantiles = new double[NDim][probs.length];
+		
+		for(int j = 0; j < NDim; j++) {
+			for(int k = 0; k < probs.length; k++) {
+				quantiles[j][k] = marginals.quantile(j, probs[k]);
+			}
+		}
+		
+		return quantiles;
+	}
+	
+	/**
+	 * Equal-tailed credible intervals of the marginal distributions, e.g.
+	 * level 0.95 gives the 2.5 % and 97.5 % quantiles of each parameter.
+	 * 
+	 * @param level Probability mass inside the interval, between 0 and 1.
+	 * @return d x 2 matrix with the lower and upper limits of each parameter.
+	 * @throws IllegalArgumentException if level is not between 0 and 1.
+	 */
+	public double[][] getCredibleIntervals(double level) {
+		
+		if(!(level > 0 && level < 1)) throw new IllegalArgumentException("Error while calculating credible intervals: "
+				+ "Level should be between 0 and 1, got " + level);
+		
+		double tail = (1 - level) / 2;
+		
+		return getQuantiles(new double[] {tail, 1 - tail});
+	}
+	
+	/**
+	 * Approximate weighted quantiles calculated with a t-digest. Instead of
+	 * sorting, the particles are streamed once through a digest of bounded
+	 * size, so this needs memory in proportion to the compression and not to
+	 * the number of particles: the weights are normalised on the fly from the
+	 * log-weights. The digests are not cached.
+	 * 
+	 * @param probs Probabilities between 0 and 1.
+	 * @param compression Accuracy of the digest, e.g. 100.
+	 * @return d x probs.length matrix as in getQuantiles.
+	 * @throws IllegalArgumentException if a probability is not between 0 and 1.
+	 */
+	public double[][] getApproximateQuantiles(double[] probs, double compression) {
+		
+		checkProbabilities(probs);
+		
+		double[][] quantiles = new double[NDim][probs.length];
+		
+		for(int j = 0; j < NDim; j++) {
+			WeightedTDigest digest = new WeightedTDigest(compression);
+			
+			for(int i = 0; i < NParticles; i++) {
+				digest.add(thetas[i * NDim + j], Math.exp(logWeights[i] - logNormalizer));
+			}
+			
+			for(int k = 0; k < probs.length; k++) {
+				quantiles[j][k] = digest.quantile(probs[k]);
+			}
+		}
+		
+		return quantiles;
+	}
+	
+	/**
+	 * Read-only view of the particles of the snapshot. Each element of the
+	 * list is created on access and holds a copy of the parameter values and
+	 * the normalised log-weight.
+	 * 
+	 * @return List view of the particles.
+	 */
+	public List<Particle> getParticles(){
+		return new AbstractList<Particle>() {
+			
+			@Override
+			public Particle get(int i) {
+				if(i < 0 || i >= NParticles) throw new IndexOutOfBoundsException("Particle index " + i
+						+ " out of bounds for " + NParticles + " particles");
+				
+				Particle p = new Particle();
+				double[] theta = new double[NDim];
+				System.arraycopy(thetas, i * NDim, theta, 0, NDim);
+				
+				p.setTheta(theta);
+				p.setLogWeight(logWeights[i] - logNormalizer);
+				
+				return p;
+			}
+			
+			@Override
+			public int size() {
+				return NParticles;
+			}
+		};
+	}
+	
+	private static void checkProbabilities(double[] probs) {
+		for(double p : probs) {
+			if(!(p >= 0 && p <= 1)) throw new IllegalArgumentException("Error while calculating quantiles: "
+					+ "Probabilities should be between 0 and 1, got " + p);
+		}
+	}
+	
+	private double[] weights() {
+		double[] w = weights;
+		
+		if(w == null) {
+			w = new double[NParticles];
+			
+			for(int i = 0; i < NParticles; i++) {
+				w[i] = Math.exp(logWeights[i] - logNormalizer);
+			}
+			
+			weights = w;
+		}
+		
+		return w;
+	}
+	
+	private PosteriorSummary summary() {
+		PosteriorSummary s = summary;
+		
+		if(s == null) {
+			s = new PosteriorSummary(thetas, weights(), NParticles, NDim);
+			summary = s;
+		}
+		
+		return s;
+	}
+	
+	private SortedMarginals sortedMarginals() {
+		SortedMarginals m = sortedMarginals;
+		
+		if(m == null) {
+			m = new SortedMarginals(thetas, weights(), NParticles, NDim);
+			sortedMarginals = m;
+		}
+		
+		return m;
+	}
+
+}
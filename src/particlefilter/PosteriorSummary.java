@@ -0,0 +1,96 @@
+package particlefilter;
+
+/**
+ * Weighted means, standard deviations and covariance matrix of a particle set, 
+ * calculated in a single pass with the weighted version of Welford's algorithm 
+ * (West 1979: Updating mean and variance estimates: an improved method. 
+ * Communications of the ACM, 22, 9, pp. 532-535).
+ * 
+ * Instances are immutable; the filter caches the latest one and calculates a 
+ * new one only after the weights or the particles have changed.
+ * 
+ * @author Joni
+ *
+ */
+
+final class PosteriorSummary {
+	
+	private final int NDim;
+	
+	private final double[] means;
+	private final double[] sds;
+	
+	// d x d, row-major:
+	private final double[] covariance;
+	
+	/**
+	 * @param thetas N x d matrix of parameter values, row-major.
+	 * @param weights Weights of the particles, need not be normalised.
+	 * @param nparticles N
+	 * @param ndim d
+	 */
+	PosteriorSummary(double[] thetas, double[] weights, int nparticles, int ndim){
+		
+		NDim = ndim;
+		
+		means      = new double[ndim];
+		sds        = new double[ndim];
+		covariance = new double[ndim * ndim];
+		
+		double[] delta = new double[ndim];
+		
+		double sumOfWeights = 0;
+		
+		for(int i = 0; i < nparticles; i++) {
+			double w = weights[i];
+			
+			if(w <= 0) continue;
+			
+			sumOfWeights += w;
+			
+			double r = w / sumOfWeights;
+			
+			for(int j = 0; j < ndim; j++) {
+				delta[j]  = thetas[i * ndim + j] - means[j];
+				means[j] += r * delta[j];
+			}
+			
+			// C += w * delta * (x - newMean)^T, in which x - newMean = (1 - r) * delta:
+			
+			for(int j = 0; j < ndim; j++) {
+				double wdj = w * (1 - r) * delta[j];
+				
+				for(int k = 0; k < ndim; k++) {
+					covariance[j * ndim + k] += wdj * delta[k];
+				}
+			}
+		}
+		
+		for(int j = 0; j < ndim * ndim; j++) {
+			covariance[j] /= sumOfWeights;
+		}
+		
+		for(int j = 0; j < ndim; j++) {
+			sds[j] = Math.sqrt(covariance[j * ndim + j]);
+		}
+	}
+	
+	double[] getMeans() {
+		return means.clone();
+	}
+	
+	double[] getSds() {
+		return sds.clone();
+	}
+	
+	double[][] getCovariance() {
+		double[][] cov = new double[NDim][NDim];
+		
+		for(int j = 0; j < NDim; j++) {
+			System.arraycopy(covariance, j * NDim, cov[j], 0, NDim);
+		}
+		
+		return cov;
+	}
+
+}
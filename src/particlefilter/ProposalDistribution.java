@@ -0,0 +1,51 @@
+package particlefilter;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Proposal distribution of the independence Metropolis-Hastings move step. 
+ * Before each rejuvenation the filter fits the distribution to the weighted 
+ * particles; proposals are then drawn and their log-densities evaluated in 
+ * batches of rows of the N x d parameter matrix (row-major).
+ * 
+ * The batches are processed in parallel, so sample and logDensity may be 
+ * called from several threads at once, for disjoint rows. They should only 
+ * read the state set by fit, and use the random number generator they are 
+ * given, so that the results stay reproducible for a fixed seed.
+ * 
+ * @author Joni
+ *
+ */
+public interface ProposalDistribution {
+	
+	/**
+	 * Fits the distribution to the particles. 
+	 * 
+	 * @param thetas N x d matrix of parameter values, row-major.
+	 * @param weights Normalised weights of the particles.
+	 * @param nparticles N
+	 * @param ndim d
+	 */
+	public void fit(double[] thetas, double[] weights, int nparticles, int ndim);
+	
+	/**
+	 * Draws proposals into rows [from, to) of out.
+	 */
+	public void sample(RandomGenerator random, double[] out, int from, int to);
+	
+	/**
+	 * Writes the log-densities of rows [from, to) of thetas into 
+	 * out[from ... to - 1]. Only differences of the log-densities are used, 
+	 * so constants may be left out.
+	 */
+	public void logDensity(double[] thetas, int from, int to, double[] out);
+	
+	/**
+	 * @return Name under which the acceptance rates of this proposal are 
+	 * recorded by the filter.
+	 */
+	public default String getName() {
+		return getClass().getSimpleName();
+	}
+
+}
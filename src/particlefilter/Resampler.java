@@ -0,0 +1,25 @@
+package particlefilter;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Strategy for choosing the ancestors of the resampled particle set. 
+ * Implementations get the normalised (linear scale) weights and write one 
+ * ancestor index per particle into a preallocated array. See ResamplingScheme 
+ * for the built-in schemes.
+ * 
+ * @author Joni
+ *
+ */
+
+public interface Resampler {
+	
+	/**
+	 * @param weights Normalised weights of the particles, should sum to one.
+	 * @param indices Array of the same length as weights, into which the index 
+	 * of the ancestor of each resampled particle is written.
+	 * @param rng Source of the random numbers.
+	 */
+	public void resample(double[] weights, int[] indices, RandomGenerator rng);
+
+}
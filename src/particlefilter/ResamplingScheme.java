@@ -0,0 +1,169 @@
+package particlefilter;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The built-in resampling schemes. All of them make a single pass over the 
+ * weights and write the ancestor indices in ascending order, so that copies
+ * of the same particle end up next to each other.
+ * 
+ * Systematic resampling is the default: it has the lowest variance of these
+ * and needs only one random number per resampling step.
+ * 
+ * The weights need not sum to exactly 1: the points are scaled by the sum of
+ * the weights, as in ParallelResampler, so that rounding errors in the sum 
+ * cannot select a particle with zero weight.
+ * 
+ * @author Joni
+ *
+ */
+
+public enum ResamplingScheme implements Resampler {
+	
+	/**
+	 * One uniform random number U, particles are chosen at the points 
+	 * (i + U) / N of the cumulative distribution.
+	 */
+	SYSTEMATIC {
+		@Override
+		public void resample(double[] weights, int[] indices, RandomGenerator rng) {
+			int N = weights.length;
+			double U = rng.nextDouble();
+			double scale = sum(weights) / N;
+			
+			int j = 0;
+			double cumsum = weights[0];
+			
+			for(int i = 0; i < N; i++) {
+				double point = (i + U) * scale;
+				
+				while(point > cumsum && j < N - 1) {
+					j++;
+					cumsum += weights[j];
+				}
+				
+				indices[i] = j;
+			}
+		}
+	},
+	
+	/**
+	 * Like systematic, but each point (i + U_i) / N has its own uniform 
+	 * random number.
+	 */
+	STRATIFIED {
+		@Override
+		public void resample(double[] weights, int[] indices, RandomGenerator rng) {
+			int N = weights.length;
+			double scale = sum(weights) / N;
+			
+			int j = 0;
+			double cumsum = weights[0];
+			
+			for(int i = 0; i < N; i++) {
+				double point = (i + rng.nextDouble()) * scale;
+				
+				while(point > cumsum && j < N - 1) {
+					j++;
+					cumsum += weights[j];
+				}
+				
+				indices[i] = j;
+			}
+		}
+	},
+	
+	/**
+	 * Each particle is first copied floor(N * w) times; the remaining slots 
+	 * are filled by stratified resampling on the residual weights.
+	 */
+	RESIDUAL {
+		@Override
+		public void resample(double[] weights, int[] indices, RandomGenerator rng) {
+			int N = weights.length;
+			double scale = N / sum(weights);
+			
+			// Number of slots left for the residual draws, the sum of the
+			// residual weights and the last particle with a residual weight:
+			
+			int NResidual = N;
+			double residualSum = 0;
+			int last = N - 1;
+			
+			for(int i = 0; i < N; i++) {
+				double copies = Math.floor(scale * weights[i]);
+				
+				NResidual   -= (int) copies;
+				residualSum += scale * weights[i] - copies;
+				
+				if(scale * weights[i] > copies) last = i;
+			}
+			
+			// The deterministic copies and the stratified draws on the residual
+			// weights are interleaved, so that the indices stay in ascending order:
+			
+			int k = 0;
+			int r = 0;
+			double cumsum = 0;
+			double point  = NResidual > 0 ? rng.nextDouble() / NResidual : Double.POSITIVE_INFINITY;
+			
+			for(int i = 0; i < N && k < N; i++) {
+				double copies = Math.floor(scale * weights[i]);
+				
+				for(int c = 0; c < copies && k < N; c++) {
+					indices[k++] = i;
+				}
+				
+				cumsum += (scale * weights[i] - copies) / residualSum;
+				
+				while((point <= cumsum || i == last) && r < NResidual && k < N) {
+					indices[k++] = i;
+					r++;
+					point = (r + rng.nextDouble()) / NResidual;
+				}
+			}
+		}
+	},
+	
+	/**
+	 * Independent draws from the multinomial distribution defined by the weights. 
+	 * Instead of drawing N uniform random numbers and sorting them, the sorted 
+	 * uniforms are generated directly (in descending order) from the distribution 
+	 * of their order statistics, so this is also a single pass.
+	 */
+	MULTINOMIAL {
+		@Override
+		public void resample(double[] weights, int[] indices, RandomGenerator rng) {
+			int N = weights.length;
+			
+			// The walk goes from the top of the cumulative distribution downwards:
+			
+			int j = N - 1;
+			double total  = sum(weights);
+			double cumsum = total - weights[N - 1];
+			double point  = total;
+			
+			for(int i = N - 1; i >= 0; i--) {
+				point *= Math.pow(rng.nextDouble(), 1.0 / (i + 1));
+				
+				while(point < cumsum && j > 0) {
+					j--;
+					cumsum -= weights[j];
+				}
+				
+				indices[i] = j;
+			}
+		}
+	};
+	
+	private static double sum(double[] weights) {
+		double sum = 0;
+		
+		for(double w : weights) {
+			sum += w;
+		}
+		
+		return sum;
+	}
+
+}
@@ -0,0 +1,91 @@
+package particlefilter;
+
+import statistical_functions.GenericStatsFunctions;
+
+/**
+ * The marginal distributions of a weighted particle set in sorted form: for 
+ * each parameter, the values in ascending order and the cumulative sums of 
+ * their normalised weights. Building this takes one index sort per parameter; 
+ * after that any quantile is a binary search.
+ * 
+ * Instances are immutable; the filter caches the latest one until the 
+ * weights or the particles change.
+ * 
+ * @author Joni
+ *
+ */
+
+final class SortedMarginals {
+	
+	private final double[][] sortedValues;
+	private final double[][] cumulativeWeights;
+	
+	/**
+	 * @param thetas N x d matrix of parameter values, row-major.
+	 * @param weights Weights of the particles, need not be normalised.
+	 * @param nparticles N
+	 * @param ndim d
+	 */
+	SortedMarginals(double[] thetas, double[] weights, int nparticles, int ndim){
+		
+		sortedValues      = new double[ndim][nparticles];
+		cumulativeWeights = new double[ndim][nparticles];
+		
+		double[] column = new double[nparticles];
+		int[]    idx    = new int[nparticles];
+		
+		for(int j = 0; j < ndim; j++) {
+			
+			for(int i = 0; i < nparticles; i++) {
+				column[i] = thetas[i * ndim + j];
+				idx[i]    = i;
+			}
+			
+			GenericStatsFunctions.sortIndices(column, idx, 0, nparticles);
+			
+			double[] values     = sortedValues[j];
+			double[] cumulative = cumulativeWeights[j];
+			
+			double sum = 0;
+			
+			for(int i = 0; i < nparticles; i++) {
+				sum          += weights[idx[i]];
+				values[i]     = column[idx[i]];
+				cumulative[i] = sum;
+			}
+			
+			for(int i = 0; i < nparticles; i++) {
+				cumulative[i] /= sum;
+			}
+		}
+	}
+	
+	/**
+	 * The p-quantile is the smallest value x for which the total weight of 
+	 * the particles with values <= x is at least p.
+	 * 
+	 * @param dim Index of the parameter.
+	 * @param p Probability between 0 and 1.
+	 */
+	double quantile(int dim, double p) {
+		
+		double[] cumulative = cumulativeWeights[dim];
+		
+		// First index at which the cumulative weight reaches p:
+		
+		int lo = 0, hi = cumulative.length - 1;
+		
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			
+			if(cumulative[mid] < p) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		
+		return sortedValues[dim][lo];
+	}
+
+}
@@ -0,0 +1,142 @@
+package particlefilter;
+
+/**
+ * Metrics of a single step of the filter: timings of the phases, the 
+ * effective sample size after reweighting and, if the set was rejuvenated, 
+ * the acceptance rate of the move step. Phases that were not run have 
+ * zero duration.
+ * 
+ * The weights are normalised lazily, when they are first needed, so the 
+ * normalisation is not a phase of its own: it is timed as part of 
+ * resampling if the set is rejuvenated.
+ * 
+ * @author Joni
+ *
+ */
+
+public final class StepMetrics {
+	
+	private final int     observationIndex;
+	private final long    reweightNanos;
+	private final long    commitNanos;
+	private final long    resampleNanos;
+	private final long    moveNanos;
+	private final double  effectiveSampleSize;
+	private final double  acceptanceRate;
+	private final long    likelihoodEvaluations;
+	private final int     uniqueAncestors;
+	private final long    moveEvaluations;
+	private final double  subsampleSize;
+	
+	StepMetrics(int observationIndex_, long reweightNanos_, long commitNanos_, long resampleNanos_, 
+			long moveNanos_, double effectiveSampleSize_, double acceptanceRate_, long likelihoodEvaluations_, 
+			int uniqueAncestors_, long moveEvaluations_, double subsampleSize_){
+		
+		observationIndex      = observationIndex_;
+		reweightNanos         = reweightNanos_;
+		commitNanos           = commitNanos_;
+		resampleNanos         = resampleNanos_;
+		moveNanos             = moveNanos_;
+		effectiveSampleSize   = effectiveSampleSize_;
+		acceptanceRate        = acceptanceRate_;
+		likelihoodEvaluations = likelihoodEvaluations_;
+		uniqueAncestors       = uniqueAncestors_;
+		moveEvaluations       = moveEvaluations_;
+		subsampleSize         = subsampleSize_;
+	}
+	
+	/**
+	 * @return Number of observations added to the filter, including this one.
+	 */
+	public int getObservationIndex() {
+		return observationIndex;
+	}
+	
+	public long getReweightNanos() {
+		return reweightNanos;
+	}
+	
+	/**
+	 * @return Time spent committing the new weights to the particle set after
+	 * reweighting, which with blocks of observations includes copying them 
+	 * out of the running buffers.
+	 */
+	public long getCommitNanos() {
+		return commitNanos;
+	}
+	
+	public long getResampleNanos() {
+		return resampleNanos;
+	}
+	
+	public long getMoveNanos() {
+		return moveNanos;
+	}
+	
+	public long getTotalNanos() {
+		return reweightNanos + commitNanos + resampleNanos + moveNanos;
+	}
+	
+	/**
+	 * @return Effective sample size after reweighting, before a possible rejuvenation.
+	 */
+	public double getEffectiveSampleSize() {
+		return effectiveSampleSize;
+	}
+	
+	public boolean wasRejuvenated() {
+		return !Double.isNaN(acceptanceRate);
+	}
+	
+	/**
+	 * @return Fraction of accepted proposals in the move step, NaN if the set 
+	 * was not rejuvenated.
+	 */
+	public double getAcceptanceRate() {
+		return acceptanceRate;
+	}
+	
+	/**
+	 * @return Number of times a particle or a proposal was scored by the model 
+	 * during the step, over the new observation or over the history.
+	 */
+	public long getLikelihoodEvaluations() {
+		return likelihoodEvaluations;
+	}
+	
+	/**
+	 * @return Number of distinct particles that survived resampling, 0 if the 
+	 * set was not rejuvenated. The smaller this is compared to the number of 
+	 * particles, the more the move step has to diversify.
+	 */
+	public int getNUniqueAncestors() {
+		return uniqueAncestors;
+	}
+	
+	/**
+	 * @return Number of proposals scored with the likelihood in the move step,
+	 * 0 if the set was not rejuvenated. See ParticleFilter.setDelayedAcceptance.
+	 */
+	public long getMoveEvaluations() {
+		return moveEvaluations;
+	}
+	
+	/**
+	 * @return Mean number of observations sampled per proposal in the move 
+	 * step, NaN if the set was not rejuvenated or the move was not subsampled.
+	 * See ParticleFilter.setSubsampling.
+	 */
+	public double getSubsampleSize() {
+		return subsampleSize;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Observation %d: reweight %d ns, commit %d ns, resample %d ns, move %d ns, "
+				+ "ESS %.1f, acceptance %.3f, %d likelihood evaluations, %d unique ancestors, "
+				+ "%d move evaluations, subsample size %.1f", observationIndex, reweightNanos, commitNanos, 
+				resampleNanos, moveNanos, effectiveSampleSize, acceptanceRate, likelihoodEvaluations, 
+				uniqueAncestors, moveEvaluations, subsampleSize);
+	}
+
+}
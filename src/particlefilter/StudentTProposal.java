@@ -0,0 +1,77 @@
+package particlefilter;
+
+import java.util.random.RandomGenerator;
+
+import statistical_functions.MultivariateNormalDistribution;
+import statistical_functions.MultivariateStudentTDistribution;
+
+/**
+ * Multivariate t proposal centred at the weighted mean of the particles, 
+ * with their covariance as the scale matrix. The heavier tails make it more
+ * forgiving than the normal proposal when the particles underestimate the 
+ * spread of the posterior.
+ * 
+ * @author Joni
+ *
+ */
+public class StudentTProposal implements ProposalDistribution {
+	
+	private final double nu;
+	
+	private int      NDim;
+	private double[] mu;
+	private double[] L;
+	private double   logNormalizer;
+	
+	/**
+	 * @param nu_ Degrees of freedom, e.g. 5.
+	 * @throws IllegalArgumentException if nu is not positive.
+	 */
+	public StudentTProposal(double nu_) {
+		if(!(nu_ > 0)) throw new IllegalArgumentException("Error while creating the proposal: "
+				+ "Degrees of freedom should be positive.");
+		
+		nu = nu_;
+	}
+	
+	@Override
+	public void fit(double[] thetas, double[] weights, int nparticles, int ndim) {
+		
+		PosteriorSummary summary = new PosteriorSummary(thetas, weights, nparticles, ndim);
+		
+		NDim = ndim;
+		mu   = summary.getMeans();
+		L    = GaussianProposal.regularisedCholesky(summary.getCovariance());
+		
+		logNormalizer = MultivariateStudentTDistribution.logNormalizer(nu, ndim, 
+				MultivariateNormalDistribution.logDeterminant(L, ndim));
+	}
+	
+	@Override
+	public void sample(RandomGenerator random, double[] out, int from, int to) {
+		
+		MultivariateStudentTDistribution.genRand(nu, L, NDim, random, out, from, to);
+		
+		for(int i = from; i < to; i++) {
+			for(int j = 0; j < NDim; j++) {
+				out[i * NDim + j] += mu[j];
+			}
+		}
+	}
+	
+	@Override
+	public void logDensity(double[] thetas, int from, int to, double[] out) {
+		
+		double[] scratch = new double[NDim];
+		
+		for(int i = from; i < to; i++) {
+			out[i] = MultivariateStudentTDistribution.logPDF(thetas, i * NDim, nu, mu, L, logNormalizer, scratch);
+		}
+	}
+	
+	@Override
+	public String getName() {
+		return "StudentTProposal(" + nu + ")";
+	}
+
+}
@@ -0,0 +1,46 @@
+package particlefilter;
+
+/**
+ * Optional extension for models whose log-likelihood depends on the data only 
+ * through a fixed-length vector of sufficient statistics (e.g. the number of 
+ * observations, their sum and their sum of squares for a normal model). 
+ * 
+ * A class extending Model can additionally implement this interface. The filter
+ * then keeps the statistics up to date as observations are added, and the 
+ * proposals in the move step are scored from the statistics instead of the 
+ * whole observation history, which makes the cost of a proposal independent 
+ * of the number of observations.
+ * 
+ * The log-likelihood calculated from the statistics has to equal the one given 
+ * by Model.logLikelihood for the same data, including the constant terms: the 
+ * proposals scored from the statistics are compared against particles whose 
+ * log-likelihood was accumulated by Model.logLikelihood.
+ * 
+ * @author Joni
+ *
+ */
+
+public interface SufficientStatisticsModel {
+	
+	/**
+	 * @return Length of the vector of sufficient statistics.
+	 */
+	public int getNStatistics();
+	
+	/**
+	 * Adds the contribution of a new observation to the statistics. The 
+	 * statistics start from an array of zeros.
+	 * 
+	 * @param y New observation.
+	 * @param statistics The statistics to be updated in place.
+	 */
+	public void updateStatistics(DataPoint y, double[] statistics);
+	
+	/**
+	 * @param statistics Sufficient statistics of all the observations so far.
+	 * @param theta Parameter values.
+	 * @return The log-likelihood of all the observations so far.
+	 */
+	public double logLikelihood(double[] statistics, double[] theta);
+
+}
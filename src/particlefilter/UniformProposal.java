@@ -0,0 +1,75 @@
+package particlefilter;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Uniform proposal over the box spanned by the particles: the min and max 
+ * values of each parameter in the particle set, not taking into account 
+ * the weights. 
+ * 
+ * @author Joni
+ *
+ */
+public class UniformProposal implements ProposalDistribution {
+	
+	private int      NDim;
+	private double[] min;
+	private double[] max;
+	private double   logVolume;
+	
+	@Override
+	public void fit(double[] thetas, double[] weights, int nparticles, int ndim) {
+		
+		NDim = ndim;
+		min  = new double[ndim];
+		max  = new double[ndim];
+		
+		for(int j = 0; j < ndim; j++) {
+			min[j] = thetas[j];
+			max[j] = thetas[j];
+		}
+		
+		for(int i = 1; i < nparticles; i++) {
+			for(int j = 0; j < ndim; j++) {
+				double x = thetas[i * ndim + j];
+				
+				if(min[j] > x) min[j] = x;
+				if(max[j] < x) max[j] = x;
+			}
+		}
+		
+		logVolume = 0;
+		
+		for(int j = 0; j < ndim; j++) {
+			logVolume += Math.log(max[j] - min[j]);
+		}
+	}
+	
+	@Override
+	public void sample(RandomGenerator random, double[] out, int from, int to) {
+		
+		for(int i = from; i < to; i++) {
+			for(int j = 0; j < NDim; j++) {
+				out[i * NDim + j] = random.nextDouble() * (max[j] - min[j]) + min[j]; 
+			}
+		}
+	}
+	
+	@Override
+	public void logDensity(double[] thetas, int from, int to, double[] out) {
+		
+		for(int i = from; i < to; i++) {
+			out[i] = -logVolume;
+			
+			for(int j = 0; j < NDim; j++) {
+				double x = thetas[i * NDim + j];
+				
+				if(x < min[j] || x > max[j]) {
+					out[i] = Double.NEGATIVE_INFINITY;
+					break;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package statistical_functions;
+
+/**
+ * Beta distribution with shape parameters a and b.
+ * 
+ * @author Joni
+ *
+ */
+public interface BetaDistribution {
+	
+	/**
+	 * At x = 0 and x = 1 the density is infinite or zero depending on the 
+	 * shape parameter. With a = 1 (or b = 1) the term (a - 1) * log(x) would 
+	 * be 0 * -Infinity at the boundary, so it is left out instead.
+	 */
+	public static double logPDF(double x, double a, double b) {
+		
+		if(x < 0 || x > 1) return Double.NEGATIVE_INFINITY;
+		
+		return logKernel(x, a - 1, b - 1) - GenericStatsFunctions.logBeta(a, b);
+	}
+	
+	/**
+	 * Log-densities of all the elements of x, written into out. The normalising
+	 * constant is calculated only once. The logarithms keep the loop scalar.
+	 */
+	public static void logPDF(double[] x, double a, double b, double[] out) {
+		
+		double c = -GenericStatsFunctions.logBeta(a, b);
+		double am1 = a - 1;
+		double bm1 = b - 1;
+		
+		for(int i = 0; i < x.length; i++) {
+			out[i] = (x[i] < 0 || x[i] > 1) ? Double.NEGATIVE_INFINITY : c + logKernel(x[i], am1, bm1);
+		}
+	}
+	
+	/**
+	 * @return (a - 1) * log(x) + (b - 1) * log(1 - x), with the terms whose 
+	 * coefficient is zero left out.
+	 */
+	private static double logKernel(double x, double am1, double bm1) {
+		
+		double logKernel = 0;
+		
+		if(am1 != 0) logKernel += am1 * Math.log(x);
+		if(bm1 != 0) logKernel += bm1 * Math.log1p(-x);
+		
+		return logKernel;
+	}
+
+}
@@ -0,0 +1,56 @@
+package statistical_functions;
+
+/**
+ * Binomial distribution: number of successes in n trials with success 
+ * probability p.
+ * 
+ * @author Joni
+ *
+ */
+public interface BinomialDistribution {
+	
+	/**
+	 * @return log(n choose k)
+	 */
+	public static double logChoose(int n, int k) {
+		return GenericStatsFunctions.logFactorial(n) - GenericStatsFunctions.logFactorial(k) 
+				- GenericStatsFunctions.logFactorial(n - k);
+	}
+	
+	public static double logPMF(int k, int n, double p) {
+		
+		if(k < 0 || k > n) return Double.NEGATIVE_INFINITY;
+		
+		if(p == 0) return k == 0 ? 0.0 : Double.NEGATIVE_INFINITY;
+		if(p == 1) return k == n ? 0.0 : Double.NEGATIVE_INFINITY;
+		
+		return logChoose(n, k) + k * Math.log(p) + (n - k) * Math.log1p(-p);
+	}
+	
+	/**
+	 * Log-probabilities of all the elements of k, written into out. The 
+	 * logarithms of p and 1 - p and log(n!) are calculated only once. 
+	 * log(k!) and log((n - k)!) depend on the element and are logGamma calls,
+	 * so the loop is scalar.
+	 */
+	public static void logPMF(int[] k, int n, double p, double[] out) {
+		
+		if(p == 0 || p == 1) {
+			for(int i = 0; i < k.length; i++) out[i] = logPMF(k[i], n, p);
+			return;
+		}
+		
+		// k * log(p) + (n - k) * log(1 - p) = n * log(1 - p) + k * log(p / (1 - p)):
+		
+		double log1mP  = Math.log1p(-p);
+		double logOdds = Math.log(p) - log1mP;
+		double c       = GenericStatsFunctions.logFactorial(n) + n * log1mP;
+		
+		for(int i = 0; i < k.length; i++) {
+			out[i] = (k[i] < 0 || k[i] > n) ? Double.NEGATIVE_INFINITY 
+					: c + k[i] * logOdds - GenericStatsFunctions.logFactorial(k[i]) 
+					- GenericStatsFunctions.logFactorial(n - k[i]);
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package statistical_functions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Gamma distribution parametrised by shape and rate (the density being 
+ * proportional to x^(shape - 1) * exp(-rate * x)).
+ * 
+ * @author Joni
+ *
+ */
+public interface GammaDistribution {
+	
+	/**
+	 * Normalising constant of the log-density, depends only on the parameters.
+	 */
+	public static double logNormalizer(double shape, double rate) {
+		return shape * Math.log(rate) - GenericStatsFunctions.logGamma(shape);
+	}
+	
+	public static double logPDF(double x, double shape, double rate) {
+		
+		if(x < 0) return Double.NEGATIVE_INFINITY;
+		
+		if(x == 0) {
+			if(shape < 1)  return Double.POSITIVE_INFINITY;
+			if(shape == 1) return Math.log(rate);
+			return Double.NEGATIVE_INFINITY;
+		}
+		
+		return logNormalizer(shape, rate) + (shape - 1) * Math.log(x) - rate * x;
+	}
+	
+	/**
+	 * Log-densities of all the elements of x, written into out. The normalising
+	 * constant is calculated only once. 
+	 */
+	public static void logPDF(double[] x, double shape, double rate, double[] out) {
+		
+		double c = logNormalizer(shape, rate);
+		
+		for(int i = 0; i < x.length; i++) {
+			out[i] = x[i] > 0 ? c + (shape - 1) * Math.log(x[i]) - rate * x[i] : logPDF(x[i], shape, rate);
+		}
+	}
+	
+	/**
+	 * Random number from the gamma distribution, using the method of 
+	 * Marsaglia & Tsang (2000: A simple method for generating gamma variables. 
+	 * ACM Transactions on Mathematical Software, 26, 3, pp. 363-372). Shapes 
+	 * below one are boosted to shape + 1 and scaled by U^(1 / shape).
+	 */
+	public static double genRand(double shape, double rate, RandomGenerator random) {
+		
+		if(shape < 1) {
+			return genRand(shape + 1, rate, random) * Math.pow(random.nextDouble(), 1 / shape);
+		}
+		
+		double d = shape - 1.0 / 3;
+		double c = 1 / Math.sqrt(9 * d);
+		
+		while(true) {
+			double x = NormalDistribution.genSTDNormalRand(random);
+			double v = 1 + c * x;
+			
+			if(v <= 0) continue;
+			
+			v = v * v * v;
+			
+			double u = random.nextDouble();
+			
+			if(u < 1 - 0.0331 * x * x * x * x || Math.log(u) < 0.5 * x * x + d * (1 - v + Math.log(v))) {
+				return d * v / rate;
+			}
+		}
+	}
+
+}
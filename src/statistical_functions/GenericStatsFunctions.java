@@ -1,5 +1,8 @@
 package statistical_functions;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
 public interface GenericStatsFunctions {
 	
 	/**
@@ -11,6 +14,16 @@ public interface GenericStatsFunctions {
 	 * @return An integer between 0 and length of the input minus one. 
 	 */
 	public static int genMultinomRandN(double[] p) {
+		return genMultinomRandN(p, ThreadLocalRandom.current());
+	}
+	
+	/**
+	 * Same as genMultinomRandN(double[]), using the given random number generator.
+	 * @param p Array of probabilities.
+	 * @param rng Source of the uniform random numbers.
+	 * @return An integer between 0 and length of the input minus one. 
+	 */
+	public static int genMultinomRandN(double[] p, RandomGenerator rng) {
 			
 //		double sumOfP = DoubleStream.of(p).boxed()
 //                .collect(Collectors.toList())
@@ -33,7 +46,7 @@ public interface GenericStatsFunctions {
 		
 		q[p.length-1] = 1.00; // Ensuring that the cumulative sum reaches unity:
 		
-		double s = Math.random();
+		double s = rng.nextDouble();
 		
 		int i = 0;
 		
@@ -43,4 +56,115 @@ public interface GenericStatsFunctions {
 
 		return i;
 	}
+	
+	/**
+	 * Logarithm of the gamma function for x > 0, using the Lanczos approximation. 
+	 * Relative error is around 1e-15. 
+	 * 
+	 * @param x
+	 * @return log(Gamma(x))
+	 */
+	public static double logGamma(double x) {
+		
+		if(x < 0.5) {
+			// Reflection formula:
+			return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1.0 - x);
+		}
+		
+		x -= 1.0;
+		
+		// Lanczos series with g = 7, n = 9:
+		
+		double a = 0.99999999999980993 
+				+ 676.5203681218851     / (x + 1) 
+				- 1259.1392167224028    / (x + 2) 
+				+ 771.32342877765313    / (x + 3) 
+				- 176.61502916214059    / (x + 4) 
+				+ 12.507343278686905    / (x + 5) 
+				- 0.13857109526572012   / (x + 6) 
+				+ 9.9843695780195716e-6 / (x + 7) 
+				+ 1.5056327351493116e-7 / (x + 8);
+		
+		double t = x + 7.5;
+		
+		return NormalDistribution.LOG_SQRT_2PI + (x + 0.5) * Math.log(t) - t + Math.log(a);
+	}
+	
+	/**
+	 * @return log(Beta(a, b)) = log(Gamma(a)) + log(Gamma(b)) - log(Gamma(a + b))
+	 */
+	public static double logBeta(double a, double b) {
+		return logGamma(a) + logGamma(b) - logGamma(a + b);
+	}
+	
+	/**
+	 * @return log(n!)
+	 */
+	public static double logFactorial(int n) {
+		return logGamma(n + 1.0);
+	}
+	
+	/**
+	 * Sorts the index array idx so that keys[idx[0]] <= keys[idx[1]] <= ... 
+	 * Uses a three-way quicksort, so that large numbers of equal keys (e.g. 
+	 * copies of the same particle after resampling) are handled in linear time. 
+	 * The keys themselves are not moved.
+	 * 
+	 * @param keys Sort keys.
+	 * @param idx Indices into keys, sorted in place.
+	 * @param from First element of idx to be sorted.
+	 * @param to One past the last element of idx to be sorted.
+	 */
+	public static void sortIndices(double[] keys, int[] idx, int from, int to) {
+		
+		while(to - from > 16) {
+			
+			// Median of three as the pivot:
+			
+			int mid = (from + to) >>> 1;
+			double a = keys[idx[from]], b = keys[idx[mid]], c = keys[idx[to - 1]];
+			double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+			
+			// Partition into < pivot, == pivot and > pivot:
+			
+			int lt = from, i = from, gt = to - 1;
+			
+			while(i <= gt) {
+				double k = keys[idx[i]];
+				
+				if(k < pivot) {
+					int t = idx[lt]; idx[lt++] = idx[i]; idx[i++] = t;
+				} else if(k > pivot) {
+					int t = idx[gt]; idx[gt--] = idx[i]; idx[i] = t;
+				} else {
+					i++;
+				}
+			}
+			
+			// Recursion on the smaller part keeps the stack depth logarithmic:
+			
+			if(lt - from < to - gt - 1) {
+				sortIndices(keys, idx, from, lt);
+				from = gt + 1;
+			} else {
+				sortIndices(keys, idx, gt + 1, to);
+				to = lt;
+			}
+		}
+		
+		// Insertion sort for the short ranges:
+		
+		for(int i = from + 1; i < to; i++) {
+			int t = idx[i];
+			double k = keys[t];
+			int j = i - 1;
+			
+			while(j >= from && keys[idx[j]] > k) {
+				idx[j + 1] = idx[j];
+				j--;
+			}
+			
+			idx[j + 1] = t;
+		}
+	}
 }
@@ -0,0 +1,142 @@
+package statistical_functions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Multivariate normal distribution parameterised by its mean and the 
+ * Cholesky factor L of its covariance matrix (covariance = L L^T). The 
+ * factor is stored as a d x d row-major array of which only the lower 
+ * triangle is used; it is calculated once with cholesky and then shared by 
+ * all the calls, so sampling and evaluating the density cost O(d^2) each.
+ * 
+ * @author Joni
+ *
+ */
+public interface MultivariateNormalDistribution {
+	
+	/**
+	 * Cholesky decomposition of a symmetric positive definite matrix.
+	 * 
+	 * @param a d x d matrix; only the lower triangle is read.
+	 * @return Lower triangular L, d x d row-major, such that L L^T = a.
+	 * @throws IllegalArgumentException if the matrix is not positive definite.
+	 */
+	public static double[] cholesky(double[][] a) {
+		
+		int d = a.length;
+		double[] L = new double[d * d];
+		
+		for(int i = 0; i < d; i++) {
+			for(int j = 0; j <= i; j++) {
+				
+				double sum = a[i][j];
+				
+				for(int k = 0; k < j; k++) {
+					sum -= L[i * d + k] * L[j * d + k];
+				}
+				
+				if(i == j) {
+					if(!(sum > 0)) throw new IllegalArgumentException("Error while calculating the Cholesky "
+							+ "decomposition: Matrix is not positive definite.");
+					
+					L[i * d + i] = Math.sqrt(sum);
+				} else {
+					L[i * d + j] = sum / L[j * d + j];
+				}
+			}
+		}
+		
+		return L;
+	}
+	
+	/**
+	 * @return Log-determinant of the covariance matrix L L^T.
+	 */
+	public static double logDeterminant(double[] L, int d) {
+		
+		double sum = 0;
+		
+		for(int i = 0; i < d; i++) {
+			sum += Math.log(L[i * d + i]);
+		}
+		
+		return 2 * sum;
+	}
+	
+	/**
+	 * Log-density of the row of x starting at offset.
+	 * 
+	 * @param x Array holding the point, e.g. a row-major matrix of points.
+	 * @param offset Index of the first element of the point in x.
+	 * @param mu Mean, of length d.
+	 * @param L Cholesky factor of the covariance.
+	 * @param logDet Log-determinant of the covariance, see logDeterminant.
+	 * @param scratch Work array of length d.
+	 */
+	public static double logPDF(double[] x, int offset, double[] mu, double[] L, double logDet, 
+			double[] scratch) {
+		
+		int d = mu.length;
+		
+		return -0.5 * (squaredMahalanobis(x, offset, mu, L, scratch) + logDet) - d * NormalDistribution.LOG_SQRT_2PI;
+	}
+	
+	/**
+	 * The quadratic form (x - mu)^T (L L^T)^-1 (x - mu) for the row of x 
+	 * starting at offset. Solves L u = x - mu by forward substitution into 
+	 * scratch (of length d); the result is then u^T u.
+	 */
+	public static double squaredMahalanobis(double[] x, int offset, double[] mu, double[] L, double[] scratch) {
+		
+		int d = mu.length;
+		
+		double quad = 0;
+		
+		for(int i = 0; i < d; i++) {
+			double sum = x[offset + i] - mu[i];
+			
+			for(int k = 0; k < i; k++) {
+				sum -= L[i * d + k] * scratch[k];
+			}
+			
+			scratch[i] = sum / L[i * d + i];
+			quad += scratch[i] * scratch[i];
+		}
+		
+		return quad;
+	}
+	
+	/**
+	 * Fills rows [from, to) of the row-major matrix out with draws from the 
+	 * zero-mean normal distribution with covariance L L^T. A location can 
+	 * be added to the rows afterwards.
+	 */
+	public static void genRand(double[] L, int d, RandomGenerator random, double[] out, int from, int to) {
+		
+		NormalDistribution.genSTDNormalRand(random, out, from * d, to * d);
+		
+		for(int r = from; r < to; r++) {
+			multiplyCholesky(L, d, out, r * d);
+		}
+	}
+	
+	/**
+	 * Replaces the row z of x starting at offset with L z.
+	 */
+	public static void multiplyCholesky(double[] L, int d, double[] x, int offset) {
+		
+		// Element i only depends on z[0 ... i], so going from the last 
+		// element to the first reads each z before it is overwritten.
+		
+		for(int i = d - 1; i >= 0; i--) {
+			double sum = 0;
+			
+			for(int k = 0; k <= i; k++) {
+				sum += L[i * d + k] * x[offset + k];
+			}
+			
+			x[offset + i] = sum;
+		}
+	}
+
+}
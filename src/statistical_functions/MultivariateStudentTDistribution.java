@@ -0,0 +1,58 @@
+package statistical_functions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Multivariate Student's t-distribution with nu degrees of freedom, location 
+ * mu and scale matrix L L^T, given by its Cholesky factor as in 
+ * MultivariateNormalDistribution. The covariance is nu / (nu - 2) L L^T for 
+ * nu > 2.
+ * 
+ * @author Joni
+ *
+ */
+public interface MultivariateStudentTDistribution {
+	
+	/**
+	 * Normalising constant of the log-density, depends only on the parameters.
+	 * 
+	 * @param logDet Log-determinant of the scale matrix.
+	 */
+	public static double logNormalizer(double nu, int d, double logDet) {
+		return GenericStatsFunctions.logGamma(0.5 * (nu + d)) - GenericStatsFunctions.logGamma(0.5 * nu) 
+				- 0.5 * d * Math.log(nu * Math.PI) - 0.5 * logDet;
+	}
+	
+	/**
+	 * Log-density of the row of x starting at offset.
+	 * 
+	 * @param logNormalizer See logNormalizer.
+	 * @param scratch Work array of length d.
+	 */
+	public static double logPDF(double[] x, int offset, double nu, double[] mu, double[] L, 
+			double logNormalizer, double[] scratch) {
+		
+		double quad = MultivariateNormalDistribution.squaredMahalanobis(x, offset, mu, L, scratch);
+		
+		return logNormalizer - 0.5 * (nu + mu.length) * Math.log1p(quad / nu);
+	}
+	
+	/**
+	 * Fills rows [from, to) of the row-major matrix out with draws from the 
+	 * zero-location distribution: normal draws with covariance L L^T divided 
+	 * by sqrt(g / nu), g being chi-squared with nu degrees of freedom.
+	 */
+	public static void genRand(double nu, double[] L, int d, RandomGenerator random, double[] out, int from, int to) {
+		
+		MultivariateNormalDistribution.genRand(L, d, random, out, from, to);
+		
+		for(int r = from; r < to; r++) {
+			double factor = Math.sqrt(nu / GammaDistribution.genRand(0.5 * nu, 0.5, random));
+			
+			for(int j = 0; j < d; j++) {
+				out[r * d + j] *= factor;
+			}
+		}
+	}
+
+}
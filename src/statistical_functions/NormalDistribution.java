@@ -1,5 +1,8 @@
 package statistical_functions;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
 /**
  * The prior is usually assumed to be normally distributed in  
  * addition to proposals being drawn from that exact distribution, so 
@@ -12,30 +15,129 @@ package statistical_functions;
  */
 public interface NormalDistribution {
 	
+	public static final double SQRT_2PI     = Math.sqrt(2 * Math.PI);
+	public static final double LOG_SQRT_2PI = 0.5 * Math.log(2 * Math.PI);
+	
 	public static double pdf(double x, double mu, double  sd) {
 		
-		double pdf = 1.0 / (sd * Math.sqrt(2 * Math.PI)) * 
-				Math.exp(-0.5 * (((x - mu) / sd) * ((x - mu) / sd)));
+		double z = (x - mu) / sd;
 		
-		return pdf;
+		return Math.exp(-0.5 * z * z) / (sd * SQRT_2PI);
 	}
 	
+	/**
+	 * Log-density in closed form, so that it does not underflow in the tails.
+	 */
 	public static double logPDF(double x, double mu, double  sd) {
-		return Math.log(pdf(x, mu, sd));
+		
+		double z = (x - mu) / sd;
+		
+		return -0.5 * z * z - Math.log(sd) - LOG_SQRT_2PI;
 	}
 	
+	/**
+	 * Log-densities of all the elements of x, written into out. The loop 
+	 * has no calls in it, so the JIT can vectorise it.
+	 * 
+	 * @param x Points at which the log-density is evaluated.
+	 * @param mu
+	 * @param sd
+	 * @param out Array of at least the length of x.
+	 */
+	public static void logPDF(double[] x, double mu, double sd, double[] out) {
+		
+		double c = -Math.log(sd) - LOG_SQRT_2PI;
+		double invSd = 1.0 / sd;
+		
+		for(int i = 0; i < x.length; i++) {
+			double z = (x[i] - mu) * invSd;
+			out[i] = c - 0.5 * z * z;
+		}
+	}
 	
 	/**
-	 * Generates a random standard normal deviate using the Box-Muller method.
-	 * http://www.mat.ufrgs.br/~viali/estatistica/mat2274/material/textos/p376-muller.pdf
-	 */ 
-	public static double genSTDNormalRand() {
-		double U1 = Math.random();
-		double U2 = Math.random();
+	 * Sum of the log-densities of all the elements of x, i.e. the log-likelihood
+	 * of an i.i.d. normal sample.
+	 */
+	public static double sumLogPDF(double[] x, double mu, double sd) {
+		
+		double invSd = 1.0 / sd;
+		double ss = 0;
+		
+		for(int i = 0; i < x.length; i++) {
+			double z = (x[i] - mu) * invSd;
+			ss += z * z;
+		}
+		
+		return -0.5 * ss - x.length * (Math.log(sd) + LOG_SQRT_2PI);
+	}
+	
+	/**
+	 * Quantile function (inverse of the cumulative distribution function) of 
+	 * the standard normal distribution, using the rational approximation of 
+	 * Acklam, which has a relative error below 1.15e-9.
+	 * 
+	 * @param p Probability between 0 and 1.
+	 */
+	public static double quantile(double p) {
 		
-		// TODO: Math.log(0) might cause problems.
+		if(p <= 0) return Double.NEGATIVE_INFINITY;
+		if(p >= 1) return Double.POSITIVE_INFINITY;
 		
-		return Math.pow(-2.0 * Math.log(U1), 0.5) * Math.cos(2.0 * Math.PI * U2);
+		double pLow = 0.02425;
+		
+		if(p < pLow) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			
+			return (((((-7.784894002430293e-03 * q - 3.223964580411365e-01) * q - 2.400758277161838e+00) * q 
+					- 2.549732539343734e+00) * q + 4.374664141464968e+00) * q + 2.938163982698783e+00) 
+					/ ((((7.784695709041462e-03 * q + 3.224671290700398e-01) * q + 2.445134137142996e+00) * q 
+					+ 3.754408661907416e+00) * q + 1);
+		}
+		
+		if(p > 1 - pLow) {
+			return -quantile(1 - p);
+		}
+		
+		double q = p - 0.5;
+		double r = q * q;
+		
+		return (((((-3.969683028665376e+01 * r + 2.209460984245205e+02) * r - 2.759285104469687e+02) * r 
+				+ 1.383577518672690e+02) * r - 3.066479806614716e+01) * r + 2.506628277459239e+00) * q 
+				/ (((((-5.447609879822406e+01 * r + 1.615858368580409e+02) * r - 1.556989798598866e+02) * r 
+				+ 6.680131188771972e+01) * r - 1.328068155288572e+01) * r + 1);
+	}
+	
+	
+	/**
+	 * Generates a random standard normal deviate using the thread's own
+	 * ThreadLocalRandom. See genSTDNormalRand(RandomGenerator).
+	 */ 
+	public static double genSTDNormalRand() {
+		return genSTDNormalRand(ThreadLocalRandom.current());
+	}
+	
+	/**
+	 * Generates a random standard normal deviate using the ziggurat method.
+	 * 
+	 * @param rng Source of the uniform random numbers.
+	 */ 
+	public static double genSTDNormalRand(RandomGenerator rng) {
+		return Ziggurat.next(rng);
+	}
+	
+	/**
+	 * Fills out[from], ..., out[to - 1] with random standard normal deviates.
+	 * 
+	 * @param rng Source of the uniform random numbers.
+	 * @param out Array to be filled.
+	 * @param from First index to be written.
+	 * @param to One past the last index to be written.
+	 */
+	public static void genSTDNormalRand(RandomGenerator rng, double[] out, int from, int to) {
+		for(int i = from; i < to; i++) {
+			out[i] = Ziggurat.next(rng);
+		}
 	}
 
 }
@@ -0,0 +1,40 @@
+package statistical_functions;
+
+/**
+ * Poisson distribution with mean lambda.
+ * 
+ * @author Joni
+ *
+ */
+public interface PoissonDistribution {
+	
+	public static double logPMF(int k, double lambda) {
+		
+		if(k < 0) return Double.NEGATIVE_INFINITY;
+		
+		if(lambda == 0) return k == 0 ? 0.0 : Double.NEGATIVE_INFINITY;
+		
+		return k * Math.log(lambda) - lambda - GenericStatsFunctions.logFactorial(k);
+	}
+	
+	/**
+	 * Log-probabilities of all the elements of k, written into out. The 
+	 * logarithm of lambda is calculated only once. log(k!) depends on the 
+	 * element and is a logGamma call, so the loop is scalar.
+	 */
+	public static void logPMF(int[] k, double lambda, double[] out) {
+		
+		if(lambda == 0) {
+			for(int i = 0; i < k.length; i++) out[i] = logPMF(k[i], lambda);
+			return;
+		}
+		
+		double logLambda = Math.log(lambda);
+		
+		for(int i = 0; i < k.length; i++) {
+			out[i] = k[i] < 0 ? Double.NEGATIVE_INFINITY 
+					: k[i] * logLambda - lambda - GenericStatsFunctions.logFactorial(k[i]);
+		}
+	}
+
+}
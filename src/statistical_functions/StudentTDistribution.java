@@ -0,0 +1,45 @@
+package statistical_functions;
+
+/**
+ * Location-scale Student's t-distribution with nu degrees of freedom. 
+ * Useful e.g. as a prior or likelihood with heavier tails than the normal.
+ * 
+ * @author Joni
+ *
+ */
+public interface StudentTDistribution {
+	
+	/**
+	 * Normalising constant of the log-density, depends only on the parameters.
+	 */
+	public static double logNormalizer(double nu, double sigma) {
+		return GenericStatsFunctions.logGamma(0.5 * (nu + 1)) - GenericStatsFunctions.logGamma(0.5 * nu) 
+				- 0.5 * Math.log(nu * Math.PI) - Math.log(sigma);
+	}
+	
+	public static double logPDF(double x, double nu, double mu, double sigma) {
+		
+		double z = (x - mu) / sigma;
+		
+		return logNormalizer(nu, sigma) - 0.5 * (nu + 1) * Math.log1p(z * z / nu);
+	}
+	
+	/**
+	 * Log-densities of all the elements of x, written into out. The normalising
+	 * constant and 1 / (nu * sigma^2) are calculated only once, so each element
+	 * takes a subtraction, three multiplications and a log1p. The JIT does not
+	 * vectorise log1p, so the loop is scalar.
+	 */
+	public static void logPDF(double[] x, double nu, double mu, double sigma, double[] out) {
+		
+		double c = logNormalizer(nu, sigma);
+		double e = -0.5 * (nu + 1);
+		double invScale = 1.0 / (nu * sigma * sigma);
+		
+		for(int i = 0; i < x.length; i++) {
+			double d = x[i] - mu;
+			out[i] = c + e * Math.log1p(d * d * invScale);
+		}
+	}
+
+}
@@ -0,0 +1,226 @@
+package statistical_functions;
+
+/**
+ * A merging t-digest (Dunning & Ertl 2019: Computing extremely accurate 
+ * quantiles using t-digests, https://arxiv.org/abs/1902.04023) for weighted 
+ * samples. It summarises any number of weighted values with a bounded number 
+ * of centroids, roughly compression / 2 at most, and gives approximate 
+ * quantiles that are most accurate in the tails.
+ * 
+ * Values are collected in a buffer and merged into the centroids when the 
+ * buffer is full, so adding a value is cheap and memory use does not grow 
+ * with the number of values. Not thread safe.
+ * 
+ * @author Joni
+ *
+ */
+public class WeightedTDigest {
+	
+	private final double compression;
+	
+	// Centroids, sorted by mean:
+	private double[] means;
+	private double[] weights;
+	private int      NCentroids = 0;
+	
+	private final double[] bufferValues;
+	private final double[] bufferWeights;
+	private int      NBuffered = 0;
+	
+	private double totalWeight = 0;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	
+	// Scratch space used in merging:
+	private double[] mergeMeans;
+	private double[] mergeWeights;
+	private int[]    mergeOrder;
+	
+	/**
+	 * @param compression Accuracy parameter, e.g. 100. Larger values give 
+	 * more accurate quantiles at the cost of more memory.
+	 * @throws IllegalArgumentException if compression is not positive.
+	 */
+	public WeightedTDigest(double compression_) {
+		
+		if(!(compression_ > 0)) throw new IllegalArgumentException("Error while creating the t-digest: "
+				+ "Compression should be positive.");
+		
+		compression = compression_;
+		
+		int capacity = (int) Math.ceil(compression) + 8;
+		int bufferSize = 5 * capacity;
+		
+		means   = new double[capacity];
+		weights = new double[capacity];
+		
+		bufferValues  = new double[bufferSize];
+		bufferWeights = new double[bufferSize];
+		
+		mergeMeans   = new double[capacity + bufferSize];
+		mergeWeights = new double[capacity + bufferSize];
+		mergeOrder   = new int[capacity + bufferSize];
+	}
+	
+	/**
+	 * Adds a value with the given weight. Values with zero weight are ignored.
+	 */
+	public void add(double x, double w) {
+		
+		if(w <= 0) return;
+		
+		if(NBuffered == bufferValues.length) {
+			merge();
+		}
+		
+		bufferValues[NBuffered]  = x;
+		bufferWeights[NBuffered] = w;
+		NBuffered++;
+		
+		totalWeight += w;
+		
+		if(x < min) min = x;
+		if(x > max) max = x;
+	}
+	
+	/**
+	 * @param q Probability between 0 and 1.
+	 * @return Approximate q-quantile, NaN if nothing has been added.
+	 */
+	public double quantile(double q) {
+		
+		if(NBuffered > 0) merge();
+		
+		if(NCentroids == 0) return Double.NaN;
+		if(NCentroids == 1 || q <= 0) return q <= 0 ? min : means[0];
+		if(q >= 1) return max;
+		
+		double target = q * totalWeight;
+		
+		// Each centroid is thought of as centred at the middle of its weight. 
+		// Below the centre of the first and above the centre of the last 
+		// centroid, interpolate towards min and max:
+		
+		if(target < weights[0] / 2) {
+			return min + (means[0] - min) * target / (weights[0] / 2);
+		}
+		
+		double cumulative = weights[0] / 2;
+		
+		for(int i = 0; i < NCentroids - 1; i++) {
+			double gap = (weights[i] + weights[i + 1]) / 2;
+			
+			if(cumulative + gap >= target) {
+				double t = (target - cumulative) / gap;
+				return means[i] + t * (means[i + 1] - means[i]);
+			}
+			
+			cumulative += gap;
+		}
+		
+		double lastHalf = weights[NCentroids - 1] / 2;
+		double t = Math.min(1, (target - cumulative) / lastHalf);
+		
+		return means[NCentroids - 1] + t * (max - means[NCentroids - 1]);
+	}
+	
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+	
+	/**
+	 * @return Number of centroids after merging the buffer.
+	 */
+	public int getNCentroids() {
+		if(NBuffered > 0) merge();
+		
+		return NCentroids;
+	}
+	
+	/**
+	 * Merges the buffer into the centroids: all the centroids and buffered 
+	 * values are sorted by mean, and neighbours are combined as long as the 
+	 * combined centroid stays within one unit of the scale function 
+	 * k(q) = compression / (2 pi) * asin(2q - 1).
+	 */
+	private void merge() {
+		
+		int n = 0;
+		
+		for(int i = 0; i < NCentroids; i++, n++) {
+			mergeMeans[n]   = means[i];
+			mergeWeights[n] = weights[i];
+		}
+		
+		for(int i = 0; i < NBuffered; i++, n++) {
+			mergeMeans[n]   = bufferValues[i];
+			mergeWeights[n] = bufferWeights[i];
+		}
+		
+		for(int i = 0; i < n; i++) {
+			mergeOrder[i] = i;
+		}
+		
+		GenericStatsFunctions.sortIndices(mergeMeans, mergeOrder, 0, n);
+		
+		NBuffered  = 0;
+		NCentroids = 0;
+		
+		double weightSoFar = 0;
+		double qLimit = qLimit(0);
+		
+		double currentMean   = mergeMeans[mergeOrder[0]];
+		double currentWeight = mergeWeights[mergeOrder[0]];
+		
+		for(int k = 1; k < n; k++) {
+			int i = mergeOrder[k];
+			
+			double q = (weightSoFar + currentWeight + mergeWeights[i]) / totalWeight;
+			
+			if(q <= qLimit) {
+				currentWeight += mergeWeights[i];
+				currentMean   += (mergeMeans[i] - currentMean) * mergeWeights[i] / currentWeight;
+			} else {
+				addCentroid(currentMean, currentWeight);
+				
+				weightSoFar += currentWeight;
+				qLimit = qLimit(weightSoFar / totalWeight);
+				
+				currentMean   = mergeMeans[i];
+				currentWeight = mergeWeights[i];
+			}
+		}
+		
+		addCentroid(currentMean, currentWeight);
+	}
+	
+	private void addCentroid(double mean, double weight) {
+		if(NCentroids == means.length) {
+			means   = java.util.Arrays.copyOf(means, 2 * means.length);
+			weights = java.util.Arrays.copyOf(weights, 2 * weights.length);
+			
+			mergeMeans   = java.util.Arrays.copyOf(mergeMeans, means.length + bufferValues.length);
+			mergeWeights = java.util.Arrays.copyOf(mergeWeights, means.length + bufferValues.length);
+			mergeOrder   = java.util.Arrays.copyOf(mergeOrder, means.length + bufferValues.length);
+		}
+		
+		means[NCentroids]   = mean;
+		weights[NCentroids] = weight;
+		NCentroids++;
+	}
+	
+	/**
+	 * @return The largest q the centroid starting at q0 may extend to: 
+	 * k^-1(k(q0) + 1), or 1 if k(q0) + 1 is past the top of the scale, 
+	 * compression / 4. Beyond that the sine would turn back down and the 
+	 * limit fall below q0.
+	 */
+	private double qLimit(double q0) {
+		double k = compression / (2 * Math.PI) * Math.asin(2 * q0 - 1);
+		
+		if(k + 1 >= compression / 4) return 1;
+		
+		return (Math.sin(2 * Math.PI * (k + 1) / compression) + 1) / 2;
+	}
+
+}
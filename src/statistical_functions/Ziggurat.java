@@ -0,0 +1,88 @@
+package statistical_functions;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Ziggurat method for standard normal deviates, following the version by 
+ * Doornik (2005): An Improved Ziggurat Method to Generate Normal Random Samples.
+ * https://www.doornik.com/research/ziggurat.pdf
+ * 
+ * The density is covered by 128 layers of equal area. About 99% of the draws
+ * fall inside a rectangle and cost one 64-bit random number and a multiplication; 
+ * the exponential and logarithm are only needed for the wedges and the tail. 
+ * 
+ * Use through NormalDistribution.genSTDNormalRand.
+ * 
+ * @author Joni
+ *
+ */
+
+final class Ziggurat {
+	
+	private static final int    C = 128;
+	private static final double R = 3.442619855899;
+	private static final double V = 9.91256303526217e-3;
+	
+	// Layer boundaries X[0] > X[1] > ... > X[C] = 0, X[0] being the 
+	// (pseudo) width of the base layer, and ratios RATIO[i] = X[i+1] / X[i]:
+	
+	private static final double[] X     = new double[C + 1];
+	private static final double[] RATIO = new double[C];
+	
+	static {
+		double f = Math.exp(-0.5 * R * R);
+		
+		X[0] = V / f;
+		X[1] = R;
+		X[C] = 0;
+		
+		for(int i = 2; i < C; i++) {
+			X[i] = Math.sqrt(-2.0 * Math.log(V / X[i - 1] + f));
+			f = Math.exp(-0.5 * X[i] * X[i]);
+		}
+		
+		for(int i = 0; i < C; i++) {
+			RATIO[i] = X[i + 1] / X[i];
+		}
+	}
+	
+	private Ziggurat() {
+		
+	}
+	
+	static double next(RandomGenerator rng) {
+		for(;;) {
+			long bits = rng.nextLong();
+			
+			// Lowest 7 bits choose the layer, highest 53 bits give u in [-1, 1):
+			
+			int    i = (int) (bits & 0x7F);
+			double u = 2.0 * ((bits >>> 11) * 0x1.0p-53) - 1.0;
+			
+			if(Math.abs(u) < RATIO[i]) return u * X[i];
+			
+			if(i == 0) return tail(rng, u < 0);
+			
+			double x  = u * X[i];
+			double f0 = Math.exp(-0.5 * (X[i] * X[i] - x * x));
+			double f1 = Math.exp(-0.5 * (X[i + 1] * X[i + 1] - x * x));
+			
+			if(f1 + rng.nextDouble() * (f0 - f1) < 1.0) return x;
+		}
+	}
+	
+	/**
+	 * Samples from the tail beyond R (Marsaglia 1964).
+	 */
+	private static double tail(RandomGenerator rng, boolean negative) {
+		double x, y;
+		
+		do {
+			x = Math.log(1.0 - rng.nextDouble()) / R;
+			y = Math.log(1.0 - rng.nextDouble());
+		} while(-2.0 * y < x * x);
+		
+		return negative ? x - R : R - x;
+	}
+
+}
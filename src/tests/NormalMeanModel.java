@@ -0,0 +1,56 @@
+package tests;
+
+import particlefilter.DataPoint;
+import particlefilter.Model;
+
+/**
+ * Independent normal observations with unknown means and standard deviation
+ * 1, one mean per component of the observations. Shared by the tests.
+ * 
+ * @author Joni
+ *
+ */
+class NormalMeanModel extends Model {
+	
+	/**
+	 * @param priorMu Prior mean of each parameter.
+	 * @param priorSD Prior standard deviation of each parameter.
+	 * @param NDim Number of components of the observations.
+	 */
+	NormalMeanModel(double priorMu, double priorSD, int NDim) {
+		double[] mus = new double[NDim];
+		double[] sds = new double[NDim];
+		
+		for(int j = 0; j < NDim; j++) {
+			mus[j] = priorMu;
+			sds[j] = priorSD;
+		}
+		
+		setPrior(mus, sds);
+	}
+	
+	@Override
+	public double logLikelihood(DataPoint[] ys, double[] theta) {
+		double ll = 0;
+		
+		for(DataPoint p : ys) {
+			double[] y = ((Point) p).y;
+			
+			for(int j = 0; j < y.length; j++) {
+				ll -= 0.5 * (y[j] - theta[j]) * (y[j] - theta[j]);
+			}
+		}
+		
+		return ll;
+	}
+	
+	static class Point extends DataPoint {
+		
+		final double[] y;
+		
+		Point(double... y_){
+			y = y_;
+		}
+	}
+
+}
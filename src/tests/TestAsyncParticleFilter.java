@@ -0,0 +1,380 @@
+package tests;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import particlefilter.AsyncParticleFilter;
+import particlefilter.BackpressurePolicy;
+import particlefilter.DataPoint;
+import particlefilter.Model;
+import particlefilter.ParticleFilter;
+import particlefilter.ResamplingScheme;
+
+public class TestAsyncParticleFilter {
+
+	public static void main(String[] args) {
+		runWithTimeout(TestAsyncParticleFilter::testBatching);
+		runWithTimeout(TestAsyncParticleFilter::testBlock);
+		runWithTimeout(TestAsyncParticleFilter::testMetricsWhileBlocked);
+		runWithTimeout(TestAsyncParticleFilter::testDrop);
+		runWithTimeout(TestAsyncParticleFilter::testSignal);
+		runWithTimeout(TestAsyncParticleFilter::testClose);
+		runWithTimeout(TestAsyncParticleFilter::testFailure);
+	}
+	
+	/**
+	 * While the filter thread is busy with the first observation, the next
+	 * three queue up and should then be added together as one block.
+	 */
+	public static void testBatching() throws Exception {
+		
+		GatedModel m = new GatedModel();
+		AsyncParticleFilter af = new AsyncParticleFilter(newFilter(m), 8, BackpressurePolicy.BLOCK);
+		
+		af.submit(new Point(0));
+		m.awaitEntered();
+		
+		long last = 0;
+		
+		for(int i = 0; i < 3; i++) {
+			last = af.submit(new Point(0));
+		}
+		
+		boolean passed = af.getQueueDepth() == 3;
+		
+		m.open();
+		
+		int NObservations = af.awaitProcessed(last).getNObservations();
+		af.close();
+		
+		passed &= last == 4 && NObservations == 4 && af.getNProcessed() == 4 && af.getNBatches() == 2
+				&& af.getMaxQueueDepth() == 3 && af.getLatencyNanos().getCount() == 4;
+		
+		if(!passed) {
+			System.out.println("Sequence number " + last + ", " + NObservations + " observations in the snapshot, "
+					+ af.getNProcessed() + " processed in " + af.getNBatches() + " batches, max queue depth "
+					+ af.getMaxQueueDepth());
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * With BLOCK, submitting into a full queue should wait until there is
+	 * room, and nothing should be lost.
+	 */
+	public static void testBlock() throws Exception {
+		
+		GatedModel m = new GatedModel();
+		AsyncParticleFilter af = new AsyncParticleFilter(newFilter(m), 1, BackpressurePolicy.BLOCK);
+		
+		af.submit(new Point(0));
+		m.awaitEntered();
+		af.submit(new Point(0));
+		
+		Thread producer = new Thread(() -> {
+			try {
+				af.submit(new Point(0));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		
+		producer.start();
+		producer.join(200);
+		
+		boolean blocked = producer.isAlive();
+		
+		m.open();
+		producer.join();
+		af.close();
+		
+		boolean passed = blocked && af.getNSubmitted() == 3 && af.getNProcessed() == 3;
+		
+		if(!passed) {
+			System.out.println("Blocked: " + blocked + ", " + af.getNProcessed() + " processed");
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * While a producer is blocked on the full queue, the backpressure metrics
+	 * should still be readable from another thread.
+	 */
+	public static void testMetricsWhileBlocked() throws Exception {
+		
+		GatedModel m = new GatedModel();
+		AsyncParticleFilter af = new AsyncParticleFilter(newFilter(m), 1, BackpressurePolicy.BLOCK);
+		
+		af.submit(new Point(0));
+		m.awaitEntered();
+		af.submit(new Point(0));
+		
+		Thread producer = new Thread(() -> {
+			try {
+				af.submit(new Point(0));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		
+		producer.start();
+		
+		while(producer.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		
+		long[] metrics = new long[3];
+		
+		Thread monitor = new Thread(() -> {
+			metrics[0] = af.getNSubmitted();
+			metrics[1] = af.getNDropped();
+			metrics[2] = af.getMaxQueueDepth();
+		});
+		
+		monitor.start();
+		monitor.join(5000);
+		
+		boolean answered = !monitor.isAlive();
+		
+		m.open();
+		producer.join();
+		monitor.join();
+		af.close();
+		
+		boolean passed = answered && metrics[0] == 2 && metrics[1] == 0 && metrics[2] == 1;
+		
+		if(!passed) {
+			System.out.println("Answered while blocked: " + answered + ", metrics " + Arrays.toString(metrics));
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * With DROP, an observation submitted into a full queue should be
+	 * discarded and counted.
+	 */
+	public static void testDrop() throws Exception {
+		
+		GatedModel m = new GatedModel();
+		AsyncParticleFilter af = new AsyncParticleFilter(newFilter(m), 2, BackpressurePolicy.DROP);
+		
+		af.submit(new Point(0));
+		m.awaitEntered();
+		af.submit(new Point(0));
+		af.submit(new Point(0));
+		
+		long dropped = af.submit(new Point(0));
+		
+		m.open();
+		af.close();
+		
+		boolean passed = dropped == -1 && af.getNDropped() == 1 && af.getNProcessed() == 3;
+		
+		if(!passed) {
+			System.out.println("Returned " + dropped + ", " + af.getNDropped() + " dropped, "
+					+ af.getNProcessed() + " processed");
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * With SIGNAL, submitting into a full queue should throw right away.
+	 */
+	public static void testSignal() throws Exception {
+		
+		GatedModel m = new GatedModel();
+		AsyncParticleFilter af = new AsyncParticleFilter(newFilter(m), 2, BackpressurePolicy.SIGNAL);
+		
+		af.submit(new Point(0));
+		m.awaitEntered();
+		af.submit(new Point(0));
+		af.submit(new Point(0));
+		
+		boolean signalled = false;
+		
+		try {
+			af.submit(new Point(0));
+		} catch(IllegalStateException e) {
+			signalled = true;
+		}
+		
+		m.open();
+		af.close();
+		
+		boolean passed = signalled && af.getNSubmitted() == 3 && af.getNProcessed() == 3;
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * close should add everything still in the queue before returning, and
+	 * observations submitted after it should be refused.
+	 */
+	public static void testClose() throws Exception {
+		
+		GatedModel m = new GatedModel();
+		AsyncParticleFilter af = new AsyncParticleFilter(newFilter(m), 8, BackpressurePolicy.BLOCK);
+		
+		af.submit(new Point(0));
+		m.awaitEntered();
+		
+		for(int i = 0; i < 5; i++) {
+			af.submit(new Point(0));
+		}
+		
+		new Thread(m::open).start();
+		af.close();
+		
+		boolean passed = af.getNProcessed() == 6 && af.getFilter().getDataPoints().size() == 6;
+		
+		try {
+			af.submit(new Point(0));
+			passed = false;
+		} catch(IllegalStateException e) {
+			// Expected.
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * If the model throws an Error on the filter thread, waiting for the
+	 * observation, submitting more and closing should all fail instead of
+	 * hanging.
+	 */
+	public static void testFailure() throws Exception {
+		
+		GatedModel m = new GatedModel();
+		m.open();
+		
+		AsyncParticleFilter af = new AsyncParticleFilter(newFilter(m), 1, BackpressurePolicy.BLOCK);
+		
+		// The filter thread will pass the Error on to the uncaught exception
+		// handler; keep it quiet:
+		
+		Thread.setDefaultUncaughtExceptionHandler((t, e) -> {});
+		
+		int failures = 0;
+		
+		try {
+			af.awaitProcessed(af.submit(new Point(Double.NaN)));
+		} catch(IllegalStateException e) {
+			failures++;
+		}
+		
+		try {
+			af.submit(new Point(0));
+			af.submit(new Point(0));
+		} catch(IllegalStateException e) {
+			failures++;
+		}
+		
+		try {
+			af.close();
+		} catch(IllegalStateException e) {
+			failures++;
+		}
+		
+		Thread.setDefaultUncaughtExceptionHandler(null);
+		
+		System.out.println(failures == 3 ? "PASS" : "FAIL");
+	}
+	
+	private interface TestBody {
+		void run() throws Exception;
+	}
+	
+	/**
+	 * Runs a test on a separate thread, so that a hang is reported as a
+	 * failure instead of stopping the tests.
+	 */
+	private static void runWithTimeout(TestBody body) {
+		
+		Thread t = new Thread(() -> {
+			try {
+				body.run();
+			} catch(Exception e) {
+				System.out.println("FAIL");
+				e.printStackTrace();
+			}
+		});
+		
+		t.setDaemon(true);
+		t.start();
+		
+		try {
+			t.join(TimeUnit.SECONDS.toMillis(30));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if(t.isAlive()) System.out.println("FAIL");
+	}
+	
+	private static ParticleFilter newFilter(Model m) {
+		m.setPrior(new double[] {0}, new double[] {1});
+		
+		ParticleFilter pf = new ParticleFilter(100, m, ResamplingScheme.SYSTEMATIC, 1L);
+		pf.setParallelism(1);
+		
+		return pf;
+	}
+	
+	private static class Point extends DataPoint {
+		
+		final double y;
+		
+		Point(double y_){
+			y = y_;
+		}
+	}
+	
+	/**
+	 * Normal observations with unit variance. While the gate is closed,
+	 * scoring waits for it to open, which keeps the filter thread busy for as
+	 * long as the test needs. NaN observations throw an Error.
+	 */
+	private static class GatedModel extends Model {
+		
+		private final CountDownLatch gate    = new CountDownLatch(1);
+		private final CountDownLatch entered = new CountDownLatch(1);
+		
+		void open() {
+			gate.countDown();
+		}
+		
+		void awaitEntered() throws InterruptedException {
+			entered.await();
+		}
+		
+		@Override
+		public double logLikelihood(DataPoint[] ys, double[] theta) {
+			
+			entered.countDown();
+			
+			try {
+				gate.await();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			
+			double ll = 0;
+			
+			for(DataPoint p : ys) {
+				double y = ((Point) p).y;
+				
+				if(Double.isNaN(y)) throw new AssertionError("Model failure");
+				
+				ll -= 0.5 * (y - theta[0]) * (y - theta[0]);
+			}
+			
+			return ll;
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import particlefilter.DataPoint;
+import particlefilter.Model;
+import particlefilter.ParticleFilter;
+import particlefilter.ResamplingScheme;
+
+public class TestBlockObservations {
+
+	public static void main(String[] args) {
+		testSameRejuvenations(0.5);
+		testSameRejuvenations(0.95);
+	}
+	
+	/**
+	 * Adding the observations in blocks should rejuvenate the set after the 
+	 * same observations, and give the same posterior, as adding them one at 
+	 * a time, also when the effective sample size dips below the limit and 
+	 * recovers within a block.
+	 * 
+	 * @param limit Resampling limit.
+	 */
+	public static void testSameRejuvenations(double limit) {
+		
+		int[] blockSizes = {1, 7, 100, 1000};
+		
+		String reference = null;
+		boolean passed = true;
+		
+		for(int size : blockSizes) {
+			String result = run(limit, size);
+			
+			if(reference == null) {
+				reference = result;
+			} else if(!result.equals(reference)) {
+				System.out.println("Blocks of " + size + ": " + result + "\nOne at a time: " + reference);
+				passed = false;
+			}
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * @return The observations after which the set was rejuvenated and the 
+	 * final means and weights.
+	 */
+	private static String run(double limit, int blockSize) {
+		
+		Model m = new NormalMeanModel(0, 5, 2);
+		
+		ParticleFilter pf = new ParticleFilter(1000, m, ResamplingScheme.SYSTEMATIC, 3L);
+		pf.setResamplingLimit(limit);
+		
+		List<Integer> rejuvenations = new ArrayList<>();
+		
+		pf.addListener(s -> {
+			if(s.wasRejuvenated()) rejuvenations.add(s.getObservationIndex());
+		});
+		
+		SplittableRandom rng = new SplittableRandom(4);
+		ArrayList<DataPoint> block = new ArrayList<>();
+		
+		for(int i = 0; i < 1000; i++) {
+			
+			// Every 50th observation is an outlier, so the ESS dips and recovers:
+			
+			double y = i % 50 == 49 ? 8 : 1 + rng.nextGaussian();
+			
+			block.add(new NormalMeanModel.Point(y, 2 - 0.5 * rng.nextGaussian()));
+			
+			if(block.size() == blockSize) {
+				pf.addObservations(block);
+				block.clear();
+			}
+		}
+		
+		pf.addObservations(block);
+		
+		return rejuvenations + " " + Arrays.toString(pf.getMarginalMeans()) 
+				+ " " + Arrays.hashCode(pf.getSnapshot().getWeights());
+	}
+
+}
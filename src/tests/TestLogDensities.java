@@ -0,0 +1,151 @@
+package tests;
+
+import statistical_functions.BetaDistribution;
+import statistical_functions.BinomialDistribution;
+import statistical_functions.GammaDistribution;
+import statistical_functions.GenericStatsFunctions;
+import statistical_functions.NormalDistribution;
+import statistical_functions.PoissonDistribution;
+import statistical_functions.StudentTDistribution;
+
+public class TestLogDensities {
+
+	public static void main(String[] args) {
+		testLogGamma();
+		testStudentT();
+		testGamma();
+		testBeta();
+		testBetaBoundaries();
+		testPoisson();
+		testBinomial();
+		testNormalTails();
+	}
+	
+	static double tolerance = 0.0001;
+	
+	static void check(double expected, double actual) {
+		if(!(Math.abs(expected - actual) <= tolerance)) {
+			System.out.println("FAIL");
+			System.out.println("Expected: " + expected);
+			System.out.println("But was: " + actual);
+		} else {
+			System.out.println("PASS");
+		}
+	}
+	
+	public static void testLogGamma() {
+		double[] x       = new double[] {0.1, 0.5, 1, 7.5, 150};
+		double[] trueval = new double[] {2.2527127, 0.5723649, 0.0, 7.5343642, 600.0094706};
+		
+		for(int i = 0; i < x.length; i++) {
+			check(trueval[i], GenericStatsFunctions.logGamma(x[i]));
+		}
+	}
+	
+	public static void testStudentT() {
+		// nu = 3, mu = 0.5, sigma = 2
+		double[] x       = new double[] {-3, 0, 1.5, 10};
+		double[] trueval = new double[] {-3.101056, -1.7352746, -1.8541214, -5.9790643};
+		double[] out     = new double[x.length];
+		
+		StudentTDistribution.logPDF(x, 3, 0.5, 2, out);
+		
+		for(int i = 0; i < x.length; i++) {
+			check(trueval[i], StudentTDistribution.logPDF(x[i], 3, 0.5, 2));
+			check(trueval[i], out[i]);
+		}
+	}
+	
+	public static void testGamma() {
+		// shape = 2.5, rate = 1.5
+		double[] x       = new double[] {0.1, 1, 4};
+		double[] trueval = new double[] {-2.8748977, -0.7710201, -3.1915786};
+		double[] out     = new double[x.length];
+		
+		GammaDistribution.logPDF(x, 2.5, 1.5, out);
+		
+		for(int i = 0; i < x.length; i++) {
+			check(trueval[i], GammaDistribution.logPDF(x[i], 2.5, 1.5));
+			check(trueval[i], out[i]);
+		}
+	}
+	
+	public static void testBeta() {
+		// a = 2, b = 5
+		double[] x       = new double[] {0.05, 0.3, 0.9};
+		double[] trueval = new double[] {0.2002919, 0.7705248, -5.9145035};
+		double[] out     = new double[x.length];
+		
+		BetaDistribution.logPDF(x, 2, 5, out);
+		
+		for(int i = 0; i < x.length; i++) {
+			check(trueval[i], BetaDistribution.logPDF(x[i], 2, 5));
+			check(trueval[i], out[i]);
+		}
+	}
+	
+	/**
+	 * With a = 1 the density at x = 0 is finite (b), and with b = 1 so is the
+	 * density at x = 1 (a); neither should be NaN.
+	 */
+	public static void testBetaBoundaries() {
+		double[] x   = new double[] {0, 1};
+		double[] out = new double[x.length];
+		
+		BetaDistribution.logPDF(x, 1, 3, out);
+		check(Math.log(3), BetaDistribution.logPDF(0, 1, 3));
+		check(Math.log(3), out[0]);
+		
+		BetaDistribution.logPDF(x, 2, 1, out);
+		check(Math.log(2), BetaDistribution.logPDF(1, 2, 1));
+		check(Math.log(2), out[1]);
+		
+		BetaDistribution.logPDF(x, 1, 1, out);
+		check(0, BetaDistribution.logPDF(0, 1, 1));
+		check(0, out[0]);
+		check(0, out[1]);
+	}
+	
+	public static void testPoisson() {
+		// lambda = 3.5
+		int[]    k       = new int[] {0, 3, 12};
+		double[] trueval = new double[] {-3.5, -1.5334706, -8.4540589};
+		double[] out     = new double[k.length];
+		
+		PoissonDistribution.logPMF(k, 3.5, out);
+		
+		for(int i = 0; i < k.length; i++) {
+			check(trueval[i], PoissonDistribution.logPMF(k[i], 3.5));
+			check(trueval[i], out[i]);
+		}
+	}
+	
+	public static void testBinomial() {
+		// n = 20, p = 0.3
+		int[]    k       = new int[] {0, 6, 20};
+		double[] trueval = new double[] {-7.1334989, -1.652142, -24.0794561};
+		double[] out     = new double[k.length];
+		
+		BinomialDistribution.logPMF(k, 20, 0.3, out);
+		
+		for(int i = 0; i < k.length; i++) {
+			check(trueval[i], BinomialDistribution.logPMF(k[i], 20, 0.3));
+			check(trueval[i], out[i]);
+		}
+	}
+	
+	/**
+	 * Far in the tails exp(-0.5 * z^2) underflows, the log-density should not.
+	 */
+	public static void testNormalTails() {
+		double[] x   = new double[] {-50, 50};
+		double[] out = new double[x.length];
+		
+		NormalDistribution.logPDF(x, 0, 1, out);
+		
+		check(-1250.9189385, NormalDistribution.logPDF(50, 0, 1));
+		check(-1250.9189385, out[0]);
+		check(-1250.9189385, out[1]);
+	}
+	
+}
@@ -0,0 +1,104 @@
+package tests;
+
+import java.util.SplittableRandom;
+
+import particlefilter.GaussianMixtureProposal;
+import particlefilter.MoveKernel;
+import particlefilter.ParticleFilter;
+import particlefilter.ProposalDistribution;
+import particlefilter.ResamplingScheme;
+import particlefilter.StudentTProposal;
+import particlefilter.UniformProposal;
+
+public class TestMoveKernels {
+
+	static final int N       = 4000;
+	static final int NObs    = 1000;
+	static final int NSweeps = 2;
+	
+	static final double PRIOR_MU = 0;
+	static final double PRIOR_SD = 5;
+	
+	public static void main(String[] args) {
+		for(Move move : Move.values()) {
+			testConjugatePosterior(move, Mode.EXACT);
+			testConjugatePosterior(move, Mode.DELAYED_ACCEPTANCE);
+			testConjugatePosterior(move, Mode.SUBSAMPLING);
+		}
+	}
+	
+	/**
+	 * Normal observations with unit variance and a normal prior on the mean:
+	 * the posterior is normal, with precision 1/PRIOR_SD^2 + n and mean
+	 * (PRIOR_MU/PRIOR_SD^2 + sum of y) / precision. The posterior mean and
+	 * standard deviation of the filter should be close to these with every
+	 * kernel and proposal, with and without delayed acceptance and
+	 * subsampling. With delayed acceptance, some proposals should also be
+	 * screened out before they are scored.
+	 */
+	public static void testConjugatePosterior(Move move, Mode mode) {
+		
+		ParticleFilter pf = new ParticleFilter(N, new NormalMeanModel(PRIOR_MU, PRIOR_SD, 1),
+				ResamplingScheme.SYSTEMATIC, 1L);
+		
+		if(move == Move.RANDOM_WALK) {
+			pf.setMoveKernel(MoveKernel.RANDOM_WALK);
+		} else {
+			pf.setProposalDistribution(move.newProposal());
+		}
+		
+		pf.setNSweeps(NSweeps);
+		
+		if(mode == Mode.DELAYED_ACCEPTANCE) pf.setDelayedAcceptance(true);
+		if(mode == Mode.SUBSAMPLING)        pf.setSubsampling(50, 0.01);
+		
+		SplittableRandom rng = new SplittableRandom(2);
+		
+		double sum = 0;
+		
+		for(int i = 0; i < NObs; i++) {
+			double y = 1 + rng.nextGaussian();
+			
+			pf.addObservation(new NormalMeanModel.Point(y));
+			sum += y;
+		}
+		
+		double precision = 1 / (PRIOR_SD * PRIOR_SD) + NObs;
+		double mean      = (PRIOR_MU / (PRIOR_SD * PRIOR_SD) + sum) / precision;
+		double sd        = 1 / Math.sqrt(precision);
+		
+		double meanError = Math.abs(pf.getMarginalMeans()[0] - mean);
+		double sdError   = Math.abs(pf.getMarginalSds()[0] / sd - 1);
+		
+		boolean passed = meanError < 1e-3 && sdError < 0.05 && pf.getNRejuvenations() > 0;
+		
+		if(mode == Mode.DELAYED_ACCEPTANCE) {
+			passed &= pf.getLastMoveEvaluations() < (long) N * NSweeps;
+		}
+		
+		if(!passed) {
+			System.out.println(move + ", " + mode + ": mean off by " + meanError + ", sd by " + sdError
+					+ ", " + pf.getLastMoveEvaluations() + " evaluations in the last move");
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	enum Move {
+		STUDENT_T, MIXTURE, UNIFORM, RANDOM_WALK;
+		
+		ProposalDistribution newProposal() {
+			switch(this) {
+			case STUDENT_T: return new StudentTProposal(5);
+			case MIXTURE:   return new GaussianMixtureProposal(3);
+			case UNIFORM:   return new UniformProposal();
+			default:        return null;
+			}
+		}
+	}
+	
+	enum Mode {
+		EXACT, DELAYED_ACCEPTANCE, SUBSAMPLING
+	}
+
+}
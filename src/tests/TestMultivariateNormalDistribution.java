@@ -0,0 +1,91 @@
+package tests;
+
+import java.util.SplittableRandom;
+
+import statistical_functions.MultivariateNormalDistribution;
+import statistical_functions.NormalDistribution;
+
+public class TestMultivariateNormalDistribution {
+
+	public static void main(String[] args) {
+		testCholesky();
+		testLogPDF();
+		testGenRand();
+	}
+	
+	/**
+	 * L L^T should reproduce the original matrix.
+	 */
+	public static void testCholesky() {
+		
+		double[][] a = {{4, 2, 0.6}, {2, 2, 0.5}, {0.6, 0.5, 3}};
+		int d = a.length;
+		
+		double[] L = MultivariateNormalDistribution.cholesky(a);
+		
+		double maxError = 0;
+		
+		for(int i = 0; i < d; i++) {
+			for(int j = 0; j < d; j++) {
+				double sum = 0;
+				
+				for(int k = 0; k < d; k++) {
+					sum += L[i * d + k] * L[j * d + k];
+				}
+				
+				maxError = Math.max(maxError, Math.abs(sum - a[i][j]));
+			}
+		}
+		
+		System.out.println(maxError < 1e-12 ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * With a diagonal covariance the log-density should be the sum of the 
+	 * univariate log-densities.
+	 */
+	public static void testLogPDF() {
+		
+		double[] mu  = {1, -2};
+		double[] sds = {0.5, 3};
+		double[] x   = {0.3, 0.7, 1.5};
+		
+		double[] L = MultivariateNormalDistribution.cholesky(new double[][] {{0.25, 0}, {0, 9}});
+		double logDet = MultivariateNormalDistribution.logDeterminant(L, 2);
+		
+		double expected = NormalDistribution.logPDF(x[1], mu[0], sds[0]) + NormalDistribution.logPDF(x[2], mu[1], sds[1]);
+		double result   = MultivariateNormalDistribution.logPDF(x, 1, mu, L, logDet, new double[2]);
+		
+		System.out.println(Math.abs(expected - result) < 1e-12 ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * The sample covariance of the draws should be close to L L^T.
+	 */
+	public static void testGenRand() {
+		
+		int N = 200000;
+		double tolerance = 0.05;
+		
+		double[][] a = {{1, 0.8}, {0.8, 2}};
+		double[] L = MultivariateNormalDistribution.cholesky(a);
+		
+		double[] draws = new double[2 * N];
+		MultivariateNormalDistribution.genRand(L, 2, new SplittableRandom(1), draws, 0, N);
+		
+		double s00 = 0, s01 = 0, s11 = 0;
+		
+		for(int i = 0; i < N; i++) {
+			s00 += draws[2 * i] * draws[2 * i];
+			s01 += draws[2 * i] * draws[2 * i + 1];
+			s11 += draws[2 * i + 1] * draws[2 * i + 1];
+		}
+		
+		boolean passed = Math.abs(s00 / N - a[0][0]) < tolerance 
+				&& Math.abs(s01 / N - a[0][1]) < tolerance 
+				&& Math.abs(s11 / N - a[1][1]) < tolerance;
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+
+}
@@ -1,11 +1,80 @@
 package tests;
 
+import java.util.SplittableRandom;
+
 import statistical_functions.NormalDistribution;
 
 public class TestNormalDistribution {
 
 	public static void main(String[] args) {
 		testlogPDF();
+		testGenSTDNormalRand();
+		testQuantile();
+	}
+	
+	/**
+	 * Compares quantiles against tabulated values.
+	 */
+	public static void testQuantile() {
+		
+		double[] p        = {1e-6, 0.01, 0.025, 0.5, 0.9, 0.995};
+		double[] expected = {-4.753424308822899, -2.326347874040841, -1.959963984540054, 0, 
+				1.281551565544601, 2.575829303548901};
+		
+		boolean passed = true;
+		
+		for(int i = 0; i < p.length; i++) {
+			if(Math.abs(NormalDistribution.quantile(p[i]) - expected[i]) > 1e-8 * Math.max(1, Math.abs(expected[i]))) {
+				System.out.println("Quantile " + p[i] + ": expected " + expected[i] + ", got " + NormalDistribution.quantile(p[i]));
+				passed = false;
+			}
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * Compares the moments and tail probabilities of a large sample against 
+	 * those of the standard normal distribution.
+	 */
+	public static void testGenSTDNormalRand() {
+		
+		int N = 4000000;
+		
+		double[] x = new double[N];
+		
+		NormalDistribution.genSTDNormalRand(new SplittableRandom(1), x, 0, N);
+		
+		double sum = 0, sumSq = 0, sumFourth = 0;
+		int beyond2 = 0, beyond35 = 0;
+		
+		for(int i = 0; i < N; i++) {
+			sum       += x[i];
+			sumSq     += x[i] * x[i];
+			sumFourth += x[i] * x[i] * x[i] * x[i];
+			
+			if(Math.abs(x[i]) > 2.0) beyond2++;
+			if(Math.abs(x[i]) > 3.5) beyond35++;
+		}
+		
+		// Expected value, observed value and tolerance (roughly five standard errors):
+		double[][] checks = new double[][] {
+			{0.0,       sum / N,                0.0025},
+			{1.0,       sumSq / N,              0.0036},
+			{3.0,       sumFourth / N,          0.025},
+			{0.0455003, (double) beyond2 / N,   0.0006},
+			{4.6525e-4, (double) beyond35 / N,  0.00006}
+		};
+		
+		for(double[] check : checks) {
+			if(Math.abs(check[0] - check[1]) > check[2]) {
+				System.out.println("FAIL");
+				System.out.println("Expected: " + check[0]);
+				System.out.println("But was: " + check[1]);
+			} else {
+				System.out.println("PASS");
+			}
+		}
 	}
 	
 	public static void testlogPDF() {
@@ -0,0 +1,237 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import particlefilter.DataPoint;
+import particlefilter.Model;
+import particlefilter.ParallelResampler;
+import particlefilter.Particle;
+import particlefilter.ParticleFilter;
+import particlefilter.ResamplingScheme;
+
+public class TestParallelResampling {
+
+	public static void main(String[] args) {
+		testSystematicOffspring();
+		testStratifiedOffspring();
+		testDeterminism(false);
+		testDeterminism(true);
+	}
+	
+	/**
+	 * With the same uniform number, parallel systematic resampling should give
+	 * every particle exactly as many offspring as the serial scheme, also
+	 * when some weights are zero or one weight dominates.
+	 */
+	public static void testSystematicOffspring() {
+		
+		int N = 200_000;
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ParallelResampler parallel = new ParallelResampler(ResamplingScheme.SYSTEMATIC, N, pool);
+		
+		int[] serialIndices   = new int[N];
+		int[] parallelIndices = new int[N];
+		
+		boolean passed = true;
+		
+		for(int seed = 1; seed <= 5; seed++) {
+			double[] weights = newWeights(N, seed);
+			
+			ResamplingScheme.SYSTEMATIC.resample(weights, serialIndices, new SplittableRandom(seed));
+			parallel.resample(weights, parallelIndices, new SplittableRandom(seed));
+			
+			int[] serialCounts   = countOffspring(serialIndices, N);
+			int[] parallelCounts = countOffspring(parallelIndices, N);
+			
+			if(!Arrays.equals(serialCounts, parallelCounts) || !isSorted(parallelIndices)) {
+				System.out.println("Offspring counts differ from serial systematic resampling, seed " + seed);
+				passed = false;
+			}
+		}
+		
+		pool.shutdown();
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * Parallel stratified resampling uses other random numbers than the
+	 * serial scheme, so the counts are compared in distribution: each count
+	 * should be within one of N * w[i] as for the serial scheme, and the mean
+	 * counts of the two should agree.
+	 */
+	public static void testStratifiedOffspring() {
+		
+		int N    = 1000;
+		int reps = 5000;
+		
+		double tolerance = 0.1;
+		
+		double[] weights = newWeights(N, 1);
+		
+		ParallelResampler parallel = new ParallelResampler(ResamplingScheme.STRATIFIED, N);
+		
+		int[] indices = new int[N];
+		
+		double[] serialMeans   = new double[N];
+		double[] parallelMeans = new double[N];
+		
+		SplittableRandom rng = new SplittableRandom(1);
+		
+		boolean bounded = true;
+		
+		for(int r = 0; r < reps; r++) {
+			ResamplingScheme.STRATIFIED.resample(weights, indices, rng);
+			addCounts(indices, serialMeans, reps);
+			
+			parallel.resample(weights, indices, rng);
+			bounded &= isSorted(indices);
+			
+			int[] counts = countOffspring(indices, N);
+			
+			for(int i = 0; i < N; i++) {
+				double expected = N * weights[i];
+				
+				if(counts[i] < Math.floor(expected) - 1 || counts[i] > Math.ceil(expected) + 1) bounded = false;
+			}
+			
+			addCounts(indices, parallelMeans, reps);
+		}
+		
+		double maxError = 0;
+		
+		for(int i = 0; i < N; i++) {
+			maxError = Math.max(maxError, Math.abs(parallelMeans[i] - serialMeans[i]));
+		}
+		
+		boolean passed = bounded && maxError < tolerance;
+		
+		if(!passed) {
+			System.out.println("Bounded and sorted: " + bounded + ", max difference of the mean counts " + maxError);
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * A filter with a fixed seed should end up with the same particles, the
+	 * same weights and the same rejuvenation points on one thread and on
+	 * four.
+	 * 
+	 * @param parallelResampling Whether both filters resample in parallel.
+	 */
+	public static void testDeterminism(boolean parallelResampling) {
+		
+		DataPoint[] data = new DataPoint[100];
+		SplittableRandom rng = new SplittableRandom(3);
+		
+		for(int i = 0; i < data.length; i++) {
+			data[i] = new NormalMeanModel.Point(1 + rng.nextGaussian());
+		}
+		
+		List<Integer> sequentialPoints = new ArrayList<>();
+		List<Integer> parallelPoints   = new ArrayList<>();
+		
+		ParticleFilter sequential = newFilter(1, parallelResampling, data, sequentialPoints);
+		ParticleFilter parallel   = newFilter(4, parallelResampling, data, parallelPoints);
+		
+		List<Particle> a = sequential.getParticles();
+		List<Particle> b = parallel.getParticles();
+		
+		boolean passed = sequentialPoints.equals(parallelPoints) && !sequentialPoints.isEmpty();
+		
+		for(int i = 0; i < a.size(); i++) {
+			passed &= Arrays.equals(a.get(i).getTheta(), b.get(i).getTheta())
+					&& a.get(i).getLogWeight() == b.get(i).getLogWeight();
+		}
+		
+		parallel.close();
+		
+		if(!passed) {
+			System.out.println("Rejuvenated after " + sequentialPoints + " and " + parallelPoints);
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	private static ParticleFilter newFilter(int nthreads, boolean parallelResampling, DataPoint[] data,
+			List<Integer> rejuvenationPoints) {
+		
+		Model m = new NormalMeanModel(0, 3, 1);
+		
+		ParticleFilter pf = new ParticleFilter(50_000, m, ResamplingScheme.SYSTEMATIC, 7L);
+		
+		pf.setParallelism(nthreads);
+		pf.setParallelResampling(parallelResampling);
+		
+		pf.addListener(s -> {
+			if(s.wasRejuvenated()) rejuvenationPoints.add(s.getObservationIndex());
+		});
+		
+		for(DataPoint y : data) {
+			pf.addObservation(y);
+		}
+		
+		return pf;
+	}
+	
+	/**
+	 * Weights proportional to squared uniform numbers, with every tenth weight
+	 * zero and one weight a thousand times the others, normalised.
+	 */
+	private static double[] newWeights(int N, long seed) {
+		
+		SplittableRandom rng = new SplittableRandom(seed);
+		
+		double[] weights = new double[N];
+		double sum = 0;
+		
+		for(int i = 0; i < N; i++) {
+			double u = rng.nextDouble();
+			
+			weights[i] = i % 10 == 0 ? 0 : u * u;
+			sum += weights[i];
+		}
+		
+		sum -= weights[N / 3];
+		
+		weights[N / 3] = 1000 * sum / N;
+		sum += weights[N / 3];
+		
+		for(int i = 0; i < N; i++) {
+			weights[i] /= sum;
+		}
+		
+		return weights;
+	}
+	
+	private static int[] countOffspring(int[] indices, int N) {
+		int[] counts = new int[N];
+		
+		for(int j : indices) {
+			counts[j]++;
+		}
+		
+		return counts;
+	}
+	
+	private static void addCounts(int[] indices, double[] means, int reps) {
+		for(int j : indices) {
+			means[j] += 1.0 / reps;
+		}
+	}
+	
+	private static boolean isSorted(int[] indices) {
+		for(int i = 1; i < indices.length; i++) {
+			if(indices[i] < indices[i-1]) return false;
+		}
+		
+		return true;
+	}
+
+}
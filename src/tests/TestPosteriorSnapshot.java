@@ -0,0 +1,136 @@
+package tests;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import particlefilter.Model;
+import particlefilter.Particle;
+import particlefilter.ParticleFilter;
+import particlefilter.PosteriorSnapshot;
+import particlefilter.ResamplingScheme;
+
+public class TestPosteriorSnapshot {
+
+	public static void main(String[] args) throws InterruptedException {
+		testConcurrentReaders();
+		testFreshOnWriterThread();
+	}
+	
+	/**
+	 * Reader threads taking snapshots while another thread adds observations
+	 * should always see a consistent posterior: weights that sum to one, 
+	 * means that agree with the particles, and versions and observation 
+	 * counts that never go backwards. Once the writer is done, a snapshot 
+	 * should include every observation.
+	 */
+	public static void testConcurrentReaders() throws InterruptedException {
+		
+		int NObservations = 300;
+		
+		ParticleFilter pf = new ParticleFilter(5000, newModel(), ResamplingScheme.SYSTEMATIC, 1L);
+		
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicInteger errors = new AtomicInteger();
+		AtomicInteger versions = new AtomicInteger();
+		
+		Thread[] readers = new Thread[3];
+		
+		for(int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread(() -> {
+				long lastVersion = -1;
+				int lastNObservations = -1;
+				
+				while(!done.get()) {
+					PosteriorSnapshot s = pf.getSnapshot();
+					
+					if(s.getVersion() < lastVersion || s.getNObservations() < lastNObservations) errors.incrementAndGet();
+					if(s.getVersion() > lastVersion) versions.incrementAndGet();
+					
+					lastVersion = s.getVersion();
+					lastNObservations = s.getNObservations();
+					
+					if(!isConsistent(s)) errors.incrementAndGet();
+				}
+			});
+			
+			readers[t].start();
+		}
+		
+		SplittableRandom rng = new SplittableRandom(2);
+		
+		for(int i = 0; i < NObservations; i++) {
+			pf.addObservation(new NormalMeanModel.Point(1 + rng.nextGaussian()));
+		}
+		
+		done.set(true);
+		
+		for(Thread t : readers) {
+			t.join();
+		}
+		
+		PosteriorSnapshot last = pf.getSnapshot();
+		
+		boolean passed = errors.get() == 0 && versions.get() > readers.length 
+				&& last.getNObservations() == NObservations && isConsistent(last);
+		
+		if(!passed) {
+			System.out.println(errors.get() + " inconsistent snapshots, " + versions.get() + " versions seen, "
+					+ last.getNObservations() + " observations in the last snapshot");
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * A snapshot taken from a listener, i.e. on the thread adding the 
+	 * observations, should include the step that was just completed.
+	 */
+	public static void testFreshOnWriterThread() {
+		
+		ParticleFilter pf = new ParticleFilter(1000, newModel(), ResamplingScheme.SYSTEMATIC, 1L);
+		
+		AtomicInteger errors = new AtomicInteger();
+		
+		pf.addListener(m -> {
+			if(pf.getSnapshot().getNObservations() != m.getObservationIndex()) errors.incrementAndGet();
+		});
+		
+		SplittableRandom rng = new SplittableRandom(2);
+		
+		for(int i = 0; i < 100; i++) {
+			pf.addObservation(new NormalMeanModel.Point(1 + rng.nextGaussian()));
+		}
+		
+		System.out.println(errors.get() == 0 ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * @return Whether the weights of the snapshot sum to one and its means 
+	 * agree with its particles.
+	 */
+	private static boolean isConsistent(PosteriorSnapshot s) {
+		
+		double sumOfWeights = 0;
+		
+		for(double w : s.getWeights()) {
+			sumOfWeights += w;
+		}
+		
+		double mean = 0;
+		List<Particle> particles = s.getParticles();
+		
+		for(int i = 0; i < particles.size(); i++) {
+			Particle p = particles.get(i);
+			mean += Math.exp(p.getLogWeight()) * p.getTheta()[0];
+		}
+		
+		return Math.abs(sumOfWeights - 1) < 1e-9 && Math.abs(mean - s.getMarginalMeans()[0]) < 1e-9;
+	}
+	
+	private static Model newModel() {
+		return new NormalMeanModel(0, 5, 1);
+	}
+
+}
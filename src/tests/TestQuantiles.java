@@ -0,0 +1,90 @@
+package tests;
+
+import java.util.Arrays;
+
+import particlefilter.PosteriorSnapshot;
+
+public class TestQuantiles {
+
+	public static void main(String[] args) {
+		testExactQuantiles();
+		testApproximateQuantiles();
+	}
+	
+	/**
+	 * Values 3, 1, 4, 1.5, 5 with weights 1, 2, 3, 1, 3 (the second parameter
+	 * is the negative of the first). Sorted, the cumulative weights are
+	 * 
+	 *   1: 0.2, 1.5: 0.3, 3: 0.4, 4: 0.7, 5: 1.0
+	 *   -5: 0.3, -4: 0.6, -3: 0.7, -1.5: 0.8, -1: 1.0
+	 * 
+	 * and the p-quantile is the first value at which the cumulative weight
+	 * reaches p.
+	 */
+	public static void testExactQuantiles() {
+		
+		double[][] thetas  = {{3, -3}, {1, -1}, {4, -4}, {1.5, -1.5}, {5, -5}};
+		double[]   weights = {1, 2, 3, 1, 3};
+		
+		double[] probs = {0, 0.1, 0.25, 0.35, 0.5, 0.65, 0.75, 0.9, 1};
+		
+		double[][] expected = {
+				{1, 1, 1.5, 3, 4, 4, 5, 5, 5},
+				{-5, -5, -5, -4, -4, -3, -1.5, -1, -1}};
+		
+		double[][] expectedIntervals = {{1.5, 5}, {-5, -1.5}};
+		
+		PosteriorSnapshot s = new PosteriorSnapshot(thetas, weights);
+		
+		double[][] quantiles = s.getQuantiles(probs);
+		double[][] intervals = s.getCredibleIntervals(0.5);
+		
+		boolean passed = Arrays.deepEquals(quantiles, expected) && Arrays.deepEquals(intervals, expectedIntervals)
+				&& Math.abs(s.getNEff() - 100.0 / 24) < 1e-12;
+		
+		if(!passed) {
+			System.out.println("Quantiles " + Arrays.deepToString(quantiles) + ", intervals "
+					+ Arrays.deepToString(intervals) + ", ESS " + s.getNEff());
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * Values 0, 0.0001, ..., 1 weighted in proportion to the value, i.e. a
+	 * discretised density 2x on [0, 1] whose p-quantile is sqrt(p). The
+	 * t-digest quantiles should be close to the exact ones.
+	 */
+	public static void testApproximateQuantiles() {
+		
+		int N = 10001;
+		double tolerance = 0.01;
+		
+		double[][] thetas  = new double[N][];
+		double[]   weights = new double[N];
+		
+		for(int i = 0; i < N; i++) {
+			thetas[i]  = new double[] {i / (double) (N - 1)};
+			weights[i] = thetas[i][0];
+		}
+		
+		double[] probs = {0.01, 0.1, 0.5, 0.9, 0.99};
+		
+		PosteriorSnapshot s = new PosteriorSnapshot(thetas, weights);
+		
+		double[] exact  = s.getQuantiles(probs)[0];
+		double[] approx = s.getApproximateQuantiles(probs, 100)[0];
+		
+		boolean passed = true;
+		
+		for(int k = 0; k < probs.length; k++) {
+			if(Math.abs(exact[k] - Math.sqrt(probs[k])) > 1e-3 || Math.abs(approx[k] - exact[k]) > tolerance) {
+				System.out.println("Quantile " + probs[k] + ": exact " + exact[k] + ", approximate " + approx[k]);
+				passed = false;
+			}
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+
+}
@@ -0,0 +1,111 @@
+package tests;
+
+import java.util.SplittableRandom;
+
+import particlefilter.ResamplingScheme;
+
+public class TestResampling {
+
+	public static void main(String[] args) {
+		testExpectedCopies();
+		testUnnormalisedWeights();
+	}
+	
+	/**
+	 * For every scheme, the number of copies of particle i should on average 
+	 * be N * w[i], and the indices should be in ascending order.
+	 */
+	public static void testExpectedCopies() {
+		
+		int N    = 100;
+		int reps = 20000;
+		
+		double tolerance = 0.1;
+		
+		double[] weights = new double[N];
+		double sum = 0;
+		
+		for(int i = 0; i < N; i++) {
+			weights[i] = (i % 10 + 1) * (i % 10 + 1);
+			sum += weights[i];
+		}
+		
+		for(int i = 0; i < N; i++) {
+			weights[i] /= sum;
+		}
+		
+		int[] indices = new int[N];
+		
+		SplittableRandom rng = new SplittableRandom(1);
+		
+		for(ResamplingScheme scheme : ResamplingScheme.values()) {
+			
+			double[] copies = new double[N];
+			boolean sorted = true;
+			
+			for(int r = 0; r < reps; r++) {
+				scheme.resample(weights, indices, rng);
+				
+				for(int i = 0; i < N; i++) {
+					copies[indices[i]]++;
+					if(i > 0 && indices[i] < indices[i-1]) sorted = false;
+				}
+			}
+			
+			double maxError = 0;
+			
+			for(int i = 0; i < N; i++) {
+				maxError = Math.max(maxError, Math.abs(copies[i] / reps - N * weights[i]));
+			}
+			
+			if(maxError > tolerance || !sorted) {
+				System.out.println("FAIL");
+				System.out.println(scheme + ": max error " + maxError + ", sorted: " + sorted);
+			} else {
+				System.out.println("PASS");
+			}
+		}
+	}
+	
+	/**
+	 * Weights that sum to a little less than 1, as after rounding errors, 
+	 * with the last quarter of the particles at zero weight: no scheme should
+	 * select a particle with zero weight.
+	 */
+	public static void testUnnormalisedWeights() {
+		
+		int N    = 100;
+		int reps = 1000;
+		
+		double[] weights = new double[N];
+		
+		for(int i = 0; i < 3 * N / 4; i++) {
+			weights[i] = (1 - 1e-3) / (3 * N / 4);
+		}
+		
+		int[] indices = new int[N];
+		
+		SplittableRandom rng = new SplittableRandom(1);
+		
+		for(ResamplingScheme scheme : ResamplingScheme.values()) {
+			
+			int dead = 0;
+			
+			for(int r = 0; r < reps; r++) {
+				scheme.resample(weights, indices, rng);
+				
+				for(int i = 0; i < N; i++) {
+					if(weights[indices[i]] == 0) dead++;
+				}
+			}
+			
+			if(dead > 0) {
+				System.out.println("FAIL");
+				System.out.println(scheme + ": " + dead + " particles with zero weight selected");
+			} else {
+				System.out.println("PASS");
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,90 @@
+package tests;
+
+import java.util.SplittableRandom;
+
+import statistical_functions.NormalDistribution;
+import statistical_functions.WeightedTDigest;
+
+public class TestWeightedTDigest {
+
+	public static void main(String[] args) {
+		testNormalQuantiles();
+		testBoundedCentroids();
+	}
+	
+	/**
+	 * The number of centroids should not grow with the number of values: 
+	 * in the upper tail every value used to become a centroid of its own.
+	 */
+	public static void testBoundedCentroids() {
+		
+		double compression = 100;
+		
+		SplittableRandom rng = new SplittableRandom(2);
+		WeightedTDigest digest = new WeightedTDigest(compression);
+		
+		boolean passed = true;
+		
+		for(int n = 1, checkpoint = 10000; n <= 2_000_000; n++) {
+			digest.add(NormalDistribution.genSTDNormalRand(rng), 1);
+			
+			if(n == checkpoint) {
+				int NCentroids = digest.getNCentroids();
+				
+				if(NCentroids > compression) {
+					System.out.println(NCentroids + " centroids after " + n + " values");
+					passed = false;
+				}
+				
+				checkpoint *= 10;
+			}
+		}
+		
+		if(digest.getNCentroids() > compression) {
+			System.out.println(digest.getNCentroids() + " centroids after all values");
+			passed = false;
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * Weighted standard normal samples (weights alternating 1 and 3) fed 
+	 * through the digest should give quantiles close to the exact ones, while 
+	 * the number of centroids stays bounded.
+	 */
+	public static void testNormalQuantiles() {
+		
+		int N = 200000;
+		double compression = 100;
+		double tolerance   = 0.02;
+		
+		double[] probs    = {0.01, 0.1, 0.5, 0.9, 0.99};
+		double[] expected = {-2.3263, -1.2816, 0, 1.2816, 2.3263};
+		
+		SplittableRandom rng = new SplittableRandom(1);
+		WeightedTDigest digest = new WeightedTDigest(compression);
+		
+		for(int i = 0; i < N; i++) {
+			digest.add(NormalDistribution.genSTDNormalRand(rng), i % 2 == 0 ? 1 : 3);
+		}
+		
+		boolean passed = digest.getNCentroids() <= compression;
+		
+		if(!passed) {
+			System.out.println("Too many centroids: " + digest.getNCentroids());
+		}
+		
+		for(int k = 0; k < probs.length; k++) {
+			double q = digest.quantile(probs[k]);
+			
+			if(Math.abs(q - expected[k]) > tolerance) {
+				System.out.println("Quantile " + probs[k] + ": expected " + expected[k] + ", got " + q);
+				passed = false;
+			}
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+
+}
@@ -0,0 +1,115 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import particlefilter.DataPoint;
+import particlefilter.Model;
+import particlefilter.ParticleFilter;
+import particlefilter.ResamplingScheme;
+
+public class TestZeroLikelihood {
+
+	public static void main(String[] args) {
+		testBoundedSupport(false);
+		testBoundedSupport(true);
+		testAllZero();
+	}
+	
+	/**
+	 * Observations uniform on [theta - 1, theta + 1]: the likelihood is zero
+	 * (log-likelihood -Infinity) for every particle further than 1 from an
+	 * observation. The weights, the ESS and the means should stay finite, the
+	 * set should keep being rejuvenated, and the mean should approach theta.
+	 * 
+	 * @param blocks Whether the observations are added in blocks of 10.
+	 */
+	public static void testBoundedSupport(boolean blocks) {
+		
+		double theta = 0.5;
+		
+		ParticleFilter pf = new ParticleFilter(2000, newModel(), ResamplingScheme.SYSTEMATIC, 1L);
+		
+		SplittableRandom rng = new SplittableRandom(2);
+		ArrayList<DataPoint> block = new ArrayList<>();
+		
+		boolean passed = true;
+		
+		for(int i = 0; i < 200; i++) {
+			block.add(new UniformPoint(theta - 1 + 2 * rng.nextDouble()));
+			
+			if(!blocks || block.size() == 10) {
+				pf.addObservations(block);
+				block.clear();
+			}
+			
+			if(!(pf.getNEff() >= 0 && pf.getNEff() <= 2000)) {
+				System.out.println("ESS after observation " + i + ": " + pf.getNEff());
+				passed = false;
+				break;
+			}
+		}
+		
+		double mean = pf.getMarginalMeans()[0];
+		int rejuvenations = pf.getNRejuvenations();
+		
+		if(!(Math.abs(mean - theta) < 0.05) || rejuvenations < 2) {
+			System.out.println("Mean " + mean + ", " + rejuvenations + " rejuvenations");
+			passed = false;
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	/**
+	 * An observation that no particle can explain should be refused, not
+	 * turn the weights into NaNs.
+	 */
+	public static void testAllZero() {
+		
+		ParticleFilter pf = new ParticleFilter(500, newModel(), ResamplingScheme.SYSTEMATIC, 1L);
+		
+		boolean passed = false;
+		
+		try {
+			pf.addObservation(new UniformPoint(1000));
+		} catch(IllegalStateException e) {
+			passed = true;
+		}
+		
+		System.out.println(passed ? "PASS" : "FAIL");
+	}
+	
+	private static Model newModel() {
+		Model m = new UniformModel();
+		m.setPrior(new double[] {0}, new double[] {3});
+		
+		return m;
+	}
+	
+	private static class UniformPoint extends DataPoint {
+		
+		final double y;
+		
+		UniformPoint(double y_){
+			y = y_;
+		}
+	}
+	
+	private static class UniformModel extends Model {
+		
+		@Override
+		public double logLikelihood(DataPoint[] ys, double[] theta) {
+			double ll = 0;
+			
+			for(DataPoint p : ys) {
+				if(Math.abs(((UniformPoint) p).y - theta[0]) > 1) return Double.NEGATIVE_INFINITY;
+				
+				ll -= Math.log(2);
+			}
+			
+			return ll;
+		}
+	}
+
+}